@@ -0,0 +1,64 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.requirements.IssueSource;
+import org.json.JSONException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An issue source that answers from memory, so that the provider can be measured without any network latency.
+ * Unknown issues fail the same way as they do on a real JIRA server.
+ */
+public class InMemoryIssueSource implements IssueSource {
+
+    private static final Pattern QUOTED_KEY = Pattern.compile("\"([^\"]+)\"");
+
+    private final Map<String, List<CascadingSelectOption>> fieldOptions;
+    private final Map<String, IssueSummary> issues;
+
+    public InMemoryIssueSource(Map<String, List<CascadingSelectOption>> fieldOptions, List<IssueSummary> issues) {
+        this.fieldOptions = ImmutableMap.copyOf(fieldOptions);
+        Map<String, IssueSummary> issuesByKey = Maps.newHashMap();
+        for(IssueSummary issue : issues) {
+            issuesByKey.put(issue.getKey(), issue);
+        }
+        this.issues = issuesByKey;
+    }
+
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        return fieldOptions.containsKey(fieldName) ? fieldOptions.get(fieldName)
+                                                   : Collections.<CascadingSelectOption>emptyList();
+    }
+
+    @Override
+    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+        if (!issues.containsKey(key)) {
+            throw new JSONException("JIRA query failed: error 400");
+        }
+        return Optional.of(issues.get(key));
+    }
+
+    /**
+     * Only understands the 'key in ("A","B")' queries used to prefetch issues.
+     */
+    @Override
+    public List<IssueSummary> findByJQL(String query) throws JSONException {
+        List<IssueSummary> matchingIssues = Lists.newArrayList();
+        Matcher keys = QUOTED_KEY.matcher(query);
+        while (keys.find()) {
+            matchingIssues.add(findByKey(keys.group(1)).get());
+        }
+        return matchingIssues;
+    }
+}
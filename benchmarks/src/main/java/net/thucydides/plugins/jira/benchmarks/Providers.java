@@ -0,0 +1,30 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import net.thucydides.core.util.EnvironmentVariables;
+import net.thucydides.core.util.MockEnvironmentVariables;
+import net.thucydides.plugins.jira.requirements.IssueSource;
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider;
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration;
+
+/**
+ * Requirements providers wired to an in-memory JIRA.
+ */
+public class Providers {
+
+    public static EnvironmentVariables environmentVariables(boolean customFieldReleases) {
+        EnvironmentVariables environmentVariables = new MockEnvironmentVariables();
+        environmentVariables.setProperty("jira.url", "http://localhost");
+        environmentVariables.setProperty("jira.project", SyntheticJira.PROJECT);
+        environmentVariables.setProperty("thucydides.requirement.types", "capability,feature,story");
+        environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.USE_CUSTOMFIELD_RELEASES,
+                                         Boolean.toString(customFieldReleases));
+        return environmentVariables;
+    }
+
+    public static JIRACustomFieldsRequirementsProvider providerFor(IssueSource issueSource,
+                                                                   EnvironmentVariables environmentVariables) {
+        return new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                        environmentVariables,
+                                                        issueSource);
+    }
+}
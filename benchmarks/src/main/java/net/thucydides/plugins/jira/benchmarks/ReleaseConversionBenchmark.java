@@ -0,0 +1,50 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import net.thucydides.core.model.Release;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.requirements.ReleaseConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting the options of the release field into releases and sprints. With a breadth of 100,
+ * the tree holds 100 releases of 100 sprints each, or 10,100 options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReleaseConversionBenchmark {
+
+    @Param({"30", "100"})
+    public int breadth;
+
+    @Param({"2"})
+    public int depth;
+
+    private List<CascadingSelectOption> options;
+
+    @Setup
+    public void createReleaseOptions() {
+        options = SyntheticJira.optionTree("Release", breadth, depth);
+    }
+
+    @Benchmark
+    public List<Release> convertToReleases() {
+        return new ReleaseConverter().convertToReleases(options);
+    }
+}
@@ -0,0 +1,124 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import net.thucydides.core.model.TestTag;
+import net.thucydides.core.requirements.model.Requirement;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider;
+import net.thucydides.plugins.jira.requirements.RequirementConverter;
+import net.thucydides.plugins.jira.requirements.RequirementIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting and indexing the requirements tree, and looking up requirements from test tags.
+ * The default shapes (17 or 37 options per level, 3 levels) give trees of a little over 5,000 and 52,000 requirements.
+ * Deeper trees can be measured with e.g. -p breadth=2 -p depth=15 (65,534 requirements).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RequirementsBenchmark {
+
+    @Param({"17", "37"})
+    public int breadth;
+
+    @Param({"3"})
+    public int depth;
+
+    private List<CascadingSelectOption> options;
+    private RequirementConverter converter;
+    private List<Requirement> requirements;
+    private JIRACustomFieldsRequirementsProvider provider;
+    private TestTag[] tags;
+    private int nextTag;
+
+    @Setup
+    public void createRequirementsTree() {
+        options = SyntheticJira.optionTree("Requirement", breadth, depth);
+        converter = new RequirementConverter(Lists.newArrayList("capability", "feature", "story"));
+        requirements = converter.convertToRequirements(options);
+
+        Map<String, List<CascadingSelectOption>> fieldOptions = ImmutableMap.of(SyntheticJira.REQUIREMENTS_FIELD, options);
+        provider = Providers.providerFor(new InMemoryIssueSource(fieldOptions, Collections.<IssueSummary>emptyList()),
+                                         Providers.environmentVariables(false));
+        provider.getRequirements();
+
+        List<Requirement> flattenedRequirements = RequirementIndex.of(requirements).getFlattenedRequirements();
+        tags = new TestTag[flattenedRequirements.size()];
+        for(int i = 0; i < tags.length; i++) {
+            Requirement requirement = flattenedRequirements.get(i);
+            tags[i] = TestTag.withName(requirement.getName()).andType(requirement.getType());
+        }
+    }
+
+    @Benchmark
+    public List<Requirement> convertToRequirements() {
+        return converter.convertToRequirements(options);
+    }
+
+    @Benchmark
+    public RequirementIndex indexRequirements() {
+        return RequirementIndex.of(requirements);
+    }
+
+    @Benchmark
+    public Map<Requirement, List<Requirement>> indexAncestors() {
+        return RequirementIndex.of(requirements).getRequirementAncestors();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Optional<Requirement> getRequirementFor() {
+        return provider.getRequirementFor(nextTag());
+    }
+
+    /**
+     * The lookup as it was done before the requirements were indexed, as a baseline for getRequirementFor.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Optional<Requirement> getRequirementForByLinearScan() {
+        TestTag testTag = nextTag();
+        for (Requirement requirement : flatten(requirements)) {
+            if (requirement.getType().equals(testTag.getType()) && requirement.getName().equals(testTag.getShortName())) {
+                return Optional.of(requirement);
+            }
+        }
+        return Optional.absent();
+    }
+
+    private TestTag nextTag() {
+        nextTag = (nextTag + 1) % tags.length;
+        return tags[nextTag];
+    }
+
+    private List<Requirement> flatten(List<Requirement> someRequirements) {
+        List<Requirement> flattenedRequirements = Lists.newArrayList();
+        for (Requirement requirement : someRequirements) {
+            flattenedRequirements.add(requirement);
+            flattenedRequirements.addAll(flatten(requirement.getChildren()));
+        }
+        return flattenedRequirements;
+    }
+}
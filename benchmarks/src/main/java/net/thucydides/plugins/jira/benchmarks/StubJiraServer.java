@@ -0,0 +1,406 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.thucydides.plugins.jira.domain.CustomFieldCast;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An embedded HTTP server answering the JIRA REST calls made by the JIRA client, from fixture data held in memory.
+ * It serves the field list, the createmeta options of cascading select fields, single issues and JQL searches
+ * on issue keys, so a provider can be pointed at it with the usual 'jira.url' property.
+ *
+ * Server behaviour can be made more realistic with a response latency, a rate of failed requests (HTTP 500),
+ * and a limit on the number of requests per second above which requests are throttled (HTTP 429).
+ * The latency and failures of a request are drawn from a seed, the request URI and how many times that URI
+ * was requested before, so that a run with the same seed makes the same decisions whatever the order
+ * in which the handler threads serve the requests.
+ * Like JIRA, it compresses its responses when the client accepts gzip, and keeps connections alive.
+ */
+public class StubJiraServer {
+
+    private static final String FIELDS_PATH = "/rest/api/2/field";
+    private static final String CREATEMETA_PATH = "/rest/api/2/issue/createmeta";
+    private static final String ISSUE_PATH = "/rest/api/2/issue/";
+    private static final String SEARCH_PATH = "/rest/api/latest/search";
+    private static final int FIRST_CUSTOM_FIELD_ID = 10000;
+    private static final Pattern QUOTED_KEY = Pattern.compile("\"([^\"]+)\"");
+
+    private final Map<String, List<CascadingSelectOption>> fieldOptions;
+    private final Map<String, IssueSummary> issues;
+    private final Map<String, String> customFieldIds;
+
+    private int latencyMillis;
+    private int latencyJitterMillis;
+    private double errorRate;
+    private int maxRequestsPerSecond;
+    private int threads = 16;
+    private long seed;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failedRequestCount = new AtomicLong();
+    private final AtomicLong throttledRequestCount = new AtomicLong();
+    private final AtomicLong compressedResponseCount = new AtomicLong();
+    private final Multiset<String> requestsByUri = ConcurrentHashMultiset.create();
+    private final Set<InetSocketAddress> clientConnections = Sets.newConcurrentHashSet();
+    private long throttlingWindowStart;
+    private int requestsInThrottlingWindow;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private StubJiraServer(Map<String, List<CascadingSelectOption>> fieldOptions, List<IssueSummary> issues) {
+        this.fieldOptions = ImmutableMap.copyOf(fieldOptions);
+        Map<String, IssueSummary> issuesByKey = Maps.newLinkedHashMap();
+        for(IssueSummary issue : issues) {
+            issuesByKey.put(issue.getKey(), issue);
+        }
+        this.issues = issuesByKey;
+        Map<String, String> fieldIds = Maps.newLinkedHashMap();
+        int nextId = FIRST_CUSTOM_FIELD_ID;
+        for(String fieldName : fieldOptions.keySet()) {
+            fieldIds.put(fieldName, "customfield_" + nextId++);
+        }
+        this.customFieldIds = fieldIds;
+    }
+
+    /**
+     * A server for these cascading select fields, by field name, and these issues. Issue custom field values
+     * for the cascading select fields should be the list of selected option names, from the top level down.
+     */
+    public static StubJiraServer serving(Map<String, List<CascadingSelectOption>> fieldOptions,
+                                         List<IssueSummary> issues) {
+        return new StubJiraServer(fieldOptions, issues);
+    }
+
+    public StubJiraServer withLatency(int latencyMillis, int latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        return this;
+    }
+
+    /**
+     * The proportion of requests, between 0 and 1, that fail with an HTTP 500 error.
+     */
+    public StubJiraServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Requests beyond this number in any one second are answered with an HTTP 429 error. 0 means no throttling.
+     */
+    public StubJiraServer withThrottlingAbove(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        return this;
+    }
+
+    public StubJiraServer withThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public StubJiraServer withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public StubJiraServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+                                                                                   .setNameFormat("stub-jira-%d")
+                                                                                   .build());
+        server.setExecutor(executor);
+        server.createContext("/", new RequestHandler());
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailedRequestCount() {
+        return failedRequestCount.get();
+    }
+
+    public long getThrottledRequestCount() {
+        return throttledRequestCount.get();
+    }
+
+    public long getCompressedResponseCount() {
+        return compressedResponseCount.get();
+    }
+
+    /**
+     * The number of different client connections requests were received on.
+     */
+    public int getConnectionCount() {
+        return clientConnections.size();
+    }
+
+    private class RequestHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requestCount.incrementAndGet();
+            clientConnections.add(exchange.getRemoteAddress());
+            try {
+                if (throttled()) {
+                    throttledRequestCount.incrementAndGet();
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    respond(exchange, 429, errorMessage("Rate limit exceeded"));
+                    return;
+                }
+                Random random = randomFor(exchange);
+                simulateLatency(random);
+                if (failed(random)) {
+                    failedRequestCount.incrementAndGet();
+                    respond(exchange, 500, errorMessage("Internal server error"));
+                    return;
+                }
+                route(exchange);
+            } catch (JSONException e) {
+                respond(exchange, 500, e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void route(HttpExchange exchange) throws IOException, JSONException {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals(FIELDS_PATH)) {
+                respond(exchange, 200, fields().toString());
+            } else if (path.equals(CREATEMETA_PATH)) {
+                respond(exchange, 200, createmeta().toString());
+            } else if (path.equals(SEARCH_PATH)) {
+                respond(exchange, 200, search(queryParameters(exchange)).toString());
+            } else if (path.startsWith(ISSUE_PATH) && issues.containsKey(path.substring(ISSUE_PATH.length()))) {
+                respond(exchange, 200, issue(issues.get(path.substring(ISSUE_PATH.length()))).toString());
+            } else {
+                respond(exchange, 404, errorMessage("Issue Does Not Exist"));
+            }
+        }
+    }
+
+    private synchronized boolean throttled() {
+        if (maxRequestsPerSecond <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - throttlingWindowStart >= TimeUnit.SECONDS.toNanos(1)) {
+            throttlingWindowStart = now;
+            requestsInThrottlingWindow = 0;
+        }
+        return (++requestsInThrottlingWindow > maxRequestsPerSecond);
+    }
+
+    private Random randomFor(HttpExchange exchange) {
+        String uri = exchange.getRequestURI().toString();
+        int previousRequests = requestsByUri.add(uri, 1);
+        return new Random(Hashing.murmur3_128().newHasher()
+                                 .putLong(seed)
+                                 .putString(uri, Charsets.UTF_8)
+                                 .putInt(previousRequests)
+                                 .hash().asLong());
+    }
+
+    private void simulateLatency(Random random) {
+        int delay = latencyMillis + ((latencyJitterMillis > 0) ? random.nextInt(latencyJitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean failed(Random random) {
+        return (errorRate > 0) && (random.nextDouble() < errorRate);
+    }
+
+    private JSONArray fields() throws JSONException {
+        JSONArray fields = new JSONArray();
+        fields.put(field("summary", "Summary", "string"));
+        fields.put(field("description", "Description", "string"));
+        fields.put(field("issuetype", "Issue Type", "issuetype"));
+        fields.put(field("labels", "Labels", "array"));
+        fields.put(field("fixVersions", "Fix Version/s", "array"));
+        for(Map.Entry<String, String> customField : customFieldIds.entrySet()) {
+            fields.put(field(customField.getValue(), customField.getKey(), "array").put("custom", true));
+        }
+        return fields;
+    }
+
+    private JSONObject field(String id, String name, String type) throws JSONException {
+        return new JSONObject().put("id", id).put("name", name).put("schema", new JSONObject().put("type", type));
+    }
+
+    private JSONObject createmeta() throws JSONException {
+        JSONObject fields = new JSONObject();
+        for(Map.Entry<String, String> customField : customFieldIds.entrySet()) {
+            fields.put(customField.getValue(),
+                       new JSONObject().put("name", customField.getKey())
+                                       .put("allowedValues", allowedValues(fieldOptions.get(customField.getKey()))));
+        }
+        JSONObject issueType = new JSONObject().put("name", "Bug").put("fields", fields);
+        JSONObject project = new JSONObject().put("key", SyntheticJira.PROJECT)
+                                             .put("issuetypes", new JSONArray().put(issueType));
+        return new JSONObject().put("projects", new JSONArray().put(project));
+    }
+
+    private JSONArray allowedValues(List<CascadingSelectOption> options) throws JSONException {
+        JSONArray values = new JSONArray();
+        for(CascadingSelectOption option : options) {
+            JSONObject value = new JSONObject().put("value", option.getOption());
+            if (!option.getNestedOptions().isEmpty()) {
+                value.put("children", allowedValues(option.getNestedOptions()));
+            }
+            values.put(value);
+        }
+        return values;
+    }
+
+    /**
+     * Only the issue keys quoted in the JQL query are used to select the matching issues,
+     * which covers the 'key in ("A","B")' queries used to prefetch issues.
+     */
+    private JSONObject search(Map<String, String> parameters) throws JSONException {
+        List<IssueSummary> matchingIssues = Lists.newArrayList();
+        Matcher keys = QUOTED_KEY.matcher(parameters.containsKey("jql") ? parameters.get("jql") : "");
+        while (keys.find()) {
+            if (issues.containsKey(keys.group(1))) {
+                matchingIssues.add(issues.get(keys.group(1)));
+            }
+        }
+        int startAt = parameters.containsKey("startAt") ? Integer.parseInt(parameters.get("startAt")) : 0;
+        int maxResults = parameters.containsKey("maxResults") ? Integer.parseInt(parameters.get("maxResults")) : 50;
+        JSONArray page = new JSONArray();
+        for(int i = startAt; i < Math.min(startAt + maxResults, matchingIssues.size()); i++) {
+            page.put(issue(matchingIssues.get(i)));
+        }
+        return new JSONObject().put("startAt", startAt)
+                               .put("maxResults", maxResults)
+                               .put("total", matchingIssues.size())
+                               .put("issues", page);
+    }
+
+    private JSONObject issue(IssueSummary issue) throws JSONException {
+        JSONArray fixVersions = new JSONArray();
+        for(String fixVersion : issue.getFixVersions()) {
+            fixVersions.put(new JSONObject().put("name", fixVersion));
+        }
+        JSONObject fields = new JSONObject().put("summary", issue.getSummary())
+                                            .put("description", issue.getDescription())
+                                            .put("issuetype", new JSONObject().put("name", issue.getType()))
+                                            .put("labels", new JSONArray(issue.getLabels()))
+                                            .put("fixVersions", fixVersions);
+        for(Map.Entry<String, String> customField : customFieldIds.entrySet()) {
+            Optional<CustomFieldCast> value = issue.customField(customField.getKey());
+            fields.put(customField.getValue(),
+                       value.isPresent() ? cascadingValue(value.get().asListOf("")) : JSONObject.NULL);
+        }
+        return new JSONObject().put("id", issue.getId())
+                               .put("key", issue.getKey())
+                               .put("self", getUrl() + ISSUE_PATH + issue.getId())
+                               .put("fields", fields)
+                               .put("renderedFields", new JSONObject().put("description", issue.getDescription()));
+    }
+
+    private Object cascadingValue(List<String> selectedOptions) throws JSONException {
+        JSONObject value = null;
+        for(String option : Lists.reverse(selectedOptions)) {
+            JSONObject parentValue = new JSONObject().put("value", option);
+            if (value != null) {
+                parentValue.put("child", value);
+            }
+            value = parentValue;
+        }
+        return (value == null) ? JSONObject.NULL : value;
+    }
+
+    private String errorMessage(String message) {
+        return "{\"errorMessages\":[\"" + message + "\"],\"errors\":{}}";
+    }
+
+    private Map<String, String> queryParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = Maps.newHashMap();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for(String parameter : Splitter.on('&').omitEmptyStrings().split(query)) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                                   URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] content = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+        String acceptedEncodings = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptedEncodings != null && acceptedEncodings.contains("gzip")) {
+            compressedResponseCount.incrementAndGet();
+            content = gzip(content);
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, content.length);
+        OutputStream responseBody = exchange.getResponseBody();
+        responseBody.write(content);
+        responseBody.close();
+    }
+
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
+        GZIPOutputStream gzipStream = new GZIPOutputStream(compressedContent);
+        gzipStream.write(content);
+        gzipStream.close();
+        return compressedContent.toByteArray();
+    }
+}
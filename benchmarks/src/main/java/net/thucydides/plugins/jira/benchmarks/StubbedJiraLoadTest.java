@@ -0,0 +1,135 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.thucydides.core.model.TestOutcome;
+import net.thucydides.core.util.EnvironmentVariables;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider;
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tags the outcomes of a synthetic test run with a provider using the real JIRA client, pointed at a
+ * {@link StubJiraServer}, and reports the throughput and the latency distribution of getTagsFor.
+ *
+ * The run is configured with system properties:
+ * <ul>
+ *     <li>stub.issues, stub.outcomes: the number of issues in the stub, and of outcomes to tag (2000, 20000)</li>
+ *     <li>stub.threads: the number of threads tagging outcomes (8)</li>
+ *     <li>stub.latency, stub.jitter: the server response time, plus a random jitter, in milliseconds (20, 10)</li>
+ *     <li>stub.error.rate: the proportion of failed server requests (0)</li>
+ *     <li>stub.throttle: the number of requests per second the server accepts, 0 for no limit (0)</li>
+ * </ul>
+ * Any thucydides.jira.* system property is passed on to the provider, e.g. -Dthucydides.jira.issue.cache.size=0.
+ */
+public class StubbedJiraLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int issueCount = Integer.getInteger("stub.issues", 2000);
+        int outcomeCount = Integer.getInteger("stub.outcomes", 20000);
+        int threads = Integer.getInteger("stub.threads", 8);
+
+        SyntheticJira syntheticJira = new SyntheticJira(42);
+        List<CascadingSelectOption> requirementOptions = SyntheticJira.optionTree("Requirement", 10, 3);
+        List<CascadingSelectOption> releaseOptions = SyntheticJira.optionTree("Release", 10, 2);
+        List<IssueSummary> issues = syntheticJira.issues(issueCount,
+                                                         SyntheticJira.pathsIn(requirementOptions),
+                                                         SyntheticJira.pathsIn(releaseOptions));
+        Map<String, List<CascadingSelectOption>> fieldOptions
+                = ImmutableMap.of(SyntheticJira.REQUIREMENTS_FIELD, requirementOptions,
+                                  SyntheticJira.RELEASE_FIELD, releaseOptions);
+
+        StubJiraServer server = StubJiraServer.serving(fieldOptions, issues)
+                                              .withLatency(Integer.getInteger("stub.latency", 20),
+                                                           Integer.getInteger("stub.jitter", 10))
+                                              .withErrorRate(Double.parseDouble(System.getProperty("stub.error.rate", "0")))
+                                              .withThrottlingAbove(Integer.getInteger("stub.throttle", 0))
+                                              .withSeed(42)
+                                              .start();
+        try {
+            final JIRACustomFieldsRequirementsProvider provider = providerFor(server);
+
+            Stopwatch requirementsLoad = Stopwatch.createStarted();
+            provider.getRequirements();
+            System.out.println("Requirements loaded in " + requirementsLoad.elapsed(TimeUnit.MILLISECONDS) + " ms");
+
+            List<List<String>> outcomeIssueKeys = syntheticJira.outcomeIssueKeys(outcomeCount, issueCount, 3);
+            final TestOutcome[] outcomes = new TestOutcome[outcomeCount];
+            for(int i = 0; i < outcomeCount; i++) {
+                outcomes[i] = new TestOutcome("outcome_" + i).withIssues(outcomeIssueKeys.get(i));
+            }
+
+            final long[] latencies = new long[outcomeCount];
+            final AtomicInteger failures = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                                                     new ThreadFactoryBuilder().setNameFormat("load-%d")
+                                                                                               .build());
+            Stopwatch run = Stopwatch.createStarted();
+            for(int i = 0; i < outcomeCount; i++) {
+                final int outcome = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long start = System.nanoTime();
+                        try {
+                            provider.getTagsFor(outcomes[outcome]);
+                        } catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[outcome] = System.nanoTime() - start;
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            long elapsedMillis = Math.max(1, run.elapsed(TimeUnit.MILLISECONDS));
+
+            Arrays.sort(latencies);
+            System.out.println("Tagged " + outcomeCount + " outcomes with " + threads + " threads in "
+                               + elapsedMillis + " ms (" + (outcomeCount * 1000L / elapsedMillis) + " outcomes/s)");
+            System.out.println("getTagsFor latency: p50 " + percentile(latencies, 50)
+                               + " ms, p90 " + percentile(latencies, 90)
+                               + " ms, p99 " + percentile(latencies, 99)
+                               + " ms, p99.9 " + percentile(latencies, 99.9)
+                               + " ms, max " + percentile(latencies, 100) + " ms");
+            System.out.println("Failed outcomes: " + failures.get());
+            System.out.println("Server requests: " + server.getRequestCount()
+                               + ", failed: " + server.getFailedRequestCount()
+                               + ", throttled: " + server.getThrottledRequestCount()
+                               + ", connections: " + server.getConnectionCount()
+                               + ", compressed responses: " + server.getCompressedResponseCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static JIRACustomFieldsRequirementsProvider providerFor(StubJiraServer server) {
+        EnvironmentVariables environmentVariables = Providers.environmentVariables(true);
+        environmentVariables.setProperty("jira.url", server.getUrl());
+        environmentVariables.setProperty("jira.username", "stub");
+        environmentVariables.setProperty("jira.password", "stub");
+        for(String property : System.getProperties().stringPropertyNames()) {
+            if (property.startsWith("thucydides.jira.")) {
+                environmentVariables.setProperty(property, System.getProperty(property));
+            }
+        }
+        return new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                        environmentVariables);
+    }
+
+    private static String percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+        long nanos = sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+        return String.format("%.1f", nanos / 1000000.0);
+    }
+}
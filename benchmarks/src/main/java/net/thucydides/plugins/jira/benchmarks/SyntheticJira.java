@@ -0,0 +1,124 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds cascading select option trees and issues of a given size and shape, with the same structure
+ * as the ones the JIRA client reads from a real server. The data only depends on the parameters and the seed,
+ * so every run of a benchmark works on the same data.
+ */
+public class SyntheticJira {
+
+    public static final String REQUIREMENTS_FIELD = "Requirements";
+    public static final String RELEASE_FIELD = "Release";
+    public static final String PROJECT = "DEMO";
+
+    private final Random random;
+
+    public SyntheticJira(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * A tree with 'breadth' options under each option, 'depth' levels deep.
+     */
+    public static List<CascadingSelectOption> optionTree(String prefix, int breadth, int depth) {
+        return optionTree(prefix, breadth, depth, null);
+    }
+
+    private static List<CascadingSelectOption> optionTree(String prefix, int breadth, int depth,
+                                                          CascadingSelectOption parent) {
+        if (depth == 0) {
+            return Collections.emptyList();
+        }
+        List<CascadingSelectOption> options = Lists.newArrayListWithCapacity(breadth);
+        for(int i = 1; i <= breadth; i++) {
+            String name = prefix + " " + i;
+            CascadingSelectOption option = new CascadingSelectOption(name, parent);
+            List<CascadingSelectOption> children = optionTree(name + ".", breadth, depth - 1, option);
+            if (!children.isEmpty()) {
+                option.addChildren(children);
+            }
+            options.add(option);
+        }
+        return options;
+    }
+
+    public static int sizeOf(List<CascadingSelectOption> options) {
+        int size = 0;
+        for(CascadingSelectOption option : options) {
+            size += 1 + sizeOf(option.getNestedOptions());
+        }
+        return size;
+    }
+
+    /**
+     * The option names on the path from a top-level option down to each option of the tree,
+     * as they appear in the custom field values of an issue.
+     */
+    public static List<List<String>> pathsIn(List<CascadingSelectOption> options) {
+        List<List<String>> paths = Lists.newArrayList();
+        addPaths(options, ImmutableList.<String>of(), paths);
+        return paths;
+    }
+
+    private static void addPaths(List<CascadingSelectOption> options, List<String> parentPath,
+                                 List<List<String>> paths) {
+        for(CascadingSelectOption option : options) {
+            List<String> path = ImmutableList.<String>builder().addAll(parentPath).add(option.getOption()).build();
+            paths.add(path);
+            addPaths(option.getNestedOptions(), path, paths);
+        }
+    }
+
+    /**
+     * Issues DEMO-1 to DEMO-'count', each one linked to a random requirement and release.
+     */
+    public List<IssueSummary> issues(int count, List<List<String>> requirementPaths, List<List<String>> releasePaths) {
+        List<IssueSummary> issues = Lists.newArrayListWithCapacity(count);
+        for(int i = 1; i <= count; i++) {
+            String key = PROJECT + "-" + i;
+            Map<String, Object> customFields = Maps.newHashMap();
+            customFields.put(REQUIREMENTS_FIELD, pick(requirementPaths));
+            if (!releasePaths.isEmpty()) {
+                customFields.put(RELEASE_FIELD, pick(releasePaths));
+            }
+            issues.add(new IssueSummary(URI.create("http://localhost/rest/api/2/issue/" + key), (long) i, key,
+                                        "Issue " + i, "Description of issue " + i,
+                                        Collections.<String, String>emptyMap(), "Story",
+                                        Collections.<String>emptyList(), ImmutableList.of("Version 1"),
+                                        customFields));
+        }
+        return issues;
+    }
+
+    /**
+     * Issue keys for 'count' test outcomes, each one referring to between 1 and 'maxIssuesPerOutcome' issues.
+     */
+    public List<List<String>> outcomeIssueKeys(int count, int issueCount, int maxIssuesPerOutcome) {
+        List<List<String>> outcomeIssues = Lists.newArrayListWithCapacity(count);
+        for(int i = 0; i < count; i++) {
+            int issuesInOutcome = 1 + random.nextInt(maxIssuesPerOutcome);
+            List<String> keys = Lists.newArrayListWithCapacity(issuesInOutcome);
+            for(int j = 0; j < issuesInOutcome; j++) {
+                keys.add(PROJECT + "-" + (1 + random.nextInt(issueCount)));
+            }
+            outcomeIssues.add(keys);
+        }
+        return outcomeIssues;
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,108 @@
+package net.thucydides.plugins.jira.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import net.thucydides.core.model.TestOutcome;
+import net.thucydides.core.model.TestTag;
+import net.thucydides.core.util.EnvironmentVariables;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tagging test outcomes with their requirements, issue and release tags, against an in-memory JIRA.
+ * The default shape matches a nightly run of a few thousand outcomes mapped onto a few hundred issues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagsBenchmark {
+
+    @Param({"600"})
+    public int issueCount;
+
+    @Param({"8000"})
+    public int outcomeCount;
+
+    @Param({"3"})
+    public int maxIssuesPerOutcome;
+
+    @Param({"10"})
+    public int requirementsBreadth;
+
+    @Param({"3"})
+    public int requirementsDepth;
+
+    private InMemoryIssueSource issueSource;
+    private EnvironmentVariables environmentVariables;
+    private JIRACustomFieldsRequirementsProvider warmProvider;
+    private TestOutcome[] outcomes;
+    private int nextOutcome;
+
+    @Setup
+    public void createJiraData() {
+        SyntheticJira syntheticJira = new SyntheticJira(42);
+        List<CascadingSelectOption> requirementOptions
+                = SyntheticJira.optionTree("Requirement", requirementsBreadth, requirementsDepth);
+        List<CascadingSelectOption> releaseOptions = SyntheticJira.optionTree("Release", 10, 2);
+        List<IssueSummary> issues = syntheticJira.issues(issueCount,
+                                                         SyntheticJira.pathsIn(requirementOptions),
+                                                         SyntheticJira.pathsIn(releaseOptions));
+        Map<String, List<CascadingSelectOption>> fieldOptions
+                = ImmutableMap.of(SyntheticJira.REQUIREMENTS_FIELD, requirementOptions,
+                                  SyntheticJira.RELEASE_FIELD, releaseOptions);
+        issueSource = new InMemoryIssueSource(fieldOptions, issues);
+        environmentVariables = Providers.environmentVariables(true);
+
+        List<List<String>> outcomeIssueKeys = syntheticJira.outcomeIssueKeys(outcomeCount, issueCount, maxIssuesPerOutcome);
+        outcomes = new TestOutcome[outcomeCount];
+        for(int i = 0; i < outcomeCount; i++) {
+            outcomes[i] = new TestOutcome("outcome_" + i).withIssues(outcomeIssueKeys.get(i));
+        }
+
+        warmProvider = Providers.providerFor(issueSource, environmentVariables);
+        for(TestOutcome outcome : outcomes) {
+            warmProvider.getTagsFor(outcome);
+        }
+    }
+
+    /**
+     * One outcome tagged by a provider that has already seen all of the issues.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Set<TestTag> getTagsFor() {
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        return warmProvider.getTagsFor(outcomes[nextOutcome]);
+    }
+
+    /**
+     * All of the outcomes of a run tagged by a new provider, including loading the requirements tree.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void tagReportRun(Blackhole blackhole) {
+        JIRACustomFieldsRequirementsProvider provider = Providers.providerFor(issueSource, environmentVariables);
+        for(TestOutcome outcome : outcomes) {
+            blackhole.consume(provider.getTagsFor(outcome));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.thucydides.plugins.jira.benchmarks
+
+import net.thucydides.core.model.TestOutcome
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import spock.lang.Specification
+
+class WhenReadingFromAStubJiraServer extends Specification {
+
+    StubJiraServer server
+
+    def cleanup() {
+        server?.stop()
+    }
+
+    def optionTree(String parent, String child) {
+        def option = new CascadingSelectOption(parent, null)
+        option.addChildren([new CascadingSelectOption(child, option, [])])
+        [option]
+    }
+
+    def issue(String key, List<String> requirement, List<String> release) {
+        new IssueSummary(URI.create("http://localhost/rest/api/2/issue/" + key), 1L, key, "Summary of " + key,
+                         "Description of " + key, [:], "Story", [], ["Version 1"],
+                         [(SyntheticJira.REQUIREMENTS_FIELD): requirement, (SyntheticJira.RELEASE_FIELD): release])
+    }
+
+    def startServer(int maxRequestsPerSecond) {
+        server = StubJiraServer.serving([(SyntheticJira.REQUIREMENTS_FIELD): optionTree("Grow apples", "Pick apples"),
+                                         (SyntheticJira.RELEASE_FIELD)     : optionTree("Release 1", "Sprint 1")],
+                                        [issue("DEMO-1", ["Grow apples", "Pick apples"], ["Release 1", "Sprint 1"])])
+                               .withThrottlingAbove(maxRequestsPerSecond)
+                               .withSeed(42)
+                               .start()
+    }
+
+    def providerFor(StubJiraServer server) {
+        def environmentVariables = new MockEnvironmentVariables()
+        environmentVariables.setProperty("jira.url", server.getUrl())
+        environmentVariables.setProperty("jira.project", SyntheticJira.PROJECT)
+        environmentVariables.setProperty("jira.username", "stub")
+        environmentVariables.setProperty("jira.password", "stub")
+        environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.USE_CUSTOMFIELD_RELEASES, "true")
+        environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.MAX_RETRIES_PROPERTY, "10")
+        environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.RETRY_BACKOFF_PROPERTY, "200")
+        new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                 environmentVariables)
+    }
+
+    def outcomeFor(List<String> issueKeys) {
+        Mock(TestOutcome) {
+            getIssueKeys() >> issueKeys
+        }
+    }
+
+    def "should read the requirements and the tags of an issue from the stub server"() {
+        given:
+            startServer(0)
+            def provider = providerFor(server)
+        when:
+            def tags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+        then:
+            provider.getRequirements().collect { it.name } == ["Grow apples"]
+            tags == [TestTag.withName("Grow apples/Pick apples").andType("feature"),
+                     TestTag.withName("Grow apples").andType("capability"),
+                     TestTag.withName("Release 1").andType("version"),
+                     TestTag.withName("Sprint 1").andType("version"),
+                     TestTag.withName("Summary of DEMO-1").andType("Story")] as Set
+            provider.getMetrics().getCount("jira.retries") == 0
+    }
+
+    /**
+     * The client does not report throttled option reads as errors, so the options are read first, in the first two
+     * requests the server accepts. The first lookup of an issue then takes three more requests, the last of which
+     * is throttled.
+     */
+    def "should retry the requests the stub server throttles"() {
+        given:
+            startServer(3)
+            def provider = providerFor(server)
+            provider.getRequirements()
+            provider.getReleases()
+        when:
+            def tags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+        then:
+            tags.contains(TestTag.withName("Grow apples/Pick apples").andType("feature"))
+            tags.contains(TestTag.withName("Sprint 1").andType("version"))
+            server.getThrottledRequestCount() > 0
+            provider.getMetrics().getCount("jira.retries") == server.getThrottledRequestCount()
+    }
+}
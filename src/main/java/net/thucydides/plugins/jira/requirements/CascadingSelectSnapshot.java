@@ -0,0 +1,203 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps a copy of the options of a cascading select field in a small text file, so that other runs
+ * against the same JIRA project can skip reading the field metadata until the snapshot gets too old.
+ * Each option is written on its own line, indented with one tab per nesting level.
+ */
+class CascadingSelectSnapshot {
+
+    private final File snapshotFile;
+    private final String source;
+    private final long timeToLive;
+
+    private final org.slf4j.Logger logger = LoggerFactory.getLogger(CascadingSelectSnapshot.class);
+
+    /**
+     * @param directory where snapshot files are kept
+     * @param source identifies the JIRA server, project and issue type the options were read from
+     * @param fieldName the cascading select field
+     * @param timeToLive how long a snapshot can be used before it is read again from JIRA, in milliseconds
+     */
+    CascadingSelectSnapshot(File directory, String source, String fieldName, long timeToLive) {
+        this.source = source + "/" + fieldName;
+        this.timeToLive = timeToLive;
+        this.snapshotFile = new File(directory, fileNameFor(fieldName, this.source));
+    }
+
+    private String fileNameFor(String fieldName, String source) {
+        return fieldName.replaceAll("[^A-Za-z0-9]", "_") + "-" + Integer.toHexString(source.hashCode()) + ".options";
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public boolean isFresh() {
+        return snapshotFile.exists()
+               && System.currentTimeMillis() - snapshotFile.lastModified() < timeToLive;
+    }
+
+    public Optional<List<CascadingSelectOption>> load() {
+        if (!isFresh()) {
+            return Optional.absent();
+        }
+        try {
+            List<String> lines = Files.readLines(snapshotFile, Charsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(header())) {
+                return Optional.absent();
+            }
+            return readOptionsFrom(lines.subList(1, lines.size()));
+        } catch (IOException e) {
+            logger.warn("Could not read snapshot " + snapshotFile, e);
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Record a new set of options. If they are the same as the ones already in the snapshot,
+     * the snapshot is only marked as fresh again.
+     */
+    public void save(List<CascadingSelectOption> options) {
+        if (options.isEmpty()) {
+            return;
+        }
+        try {
+            List<String> lines = Lists.newArrayList(header());
+            writeOptions(options, lines);
+            if (snapshotFile.exists() && Files.readLines(snapshotFile, Charsets.UTF_8).equals(lines)) {
+                snapshotFile.setLastModified(System.currentTimeMillis());
+            } else {
+                write(lines);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write snapshot " + snapshotFile, e);
+        }
+    }
+
+    private void write(List<String> lines) throws IOException {
+        Files.createParentDirs(snapshotFile);
+        File newSnapshot = File.createTempFile(snapshotFile.getName(), ".tmp", snapshotFile.getParentFile());
+        BufferedWriter writer = Files.newWriter(newSnapshot, Charsets.UTF_8);
+        try {
+            for(String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+        if (!newSnapshot.renameTo(snapshotFile)) {
+            Files.move(newSnapshot, snapshotFile);
+        }
+    }
+
+    private String header() {
+        return "# " + escape(source);
+    }
+
+    /**
+     * The options are written with an explicit stack of the siblings left to write at each level, like the trees
+     * are walked by {@link TreeIndex}.
+     */
+    private void writeOptions(List<CascadingSelectOption> options, List<String> lines) {
+        Deque<Iterator<CascadingSelectOption>> remainingOptions = new ArrayDeque<Iterator<CascadingSelectOption>>();
+        remainingOptions.push(options.iterator());
+        while (!remainingOptions.isEmpty()) {
+            Iterator<CascadingSelectOption> siblings = remainingOptions.peek();
+            if (!siblings.hasNext()) {
+                remainingOptions.pop();
+                continue;
+            }
+            CascadingSelectOption option = siblings.next();
+            StringBuilder line = new StringBuilder();
+            for(int i = 1; i < remainingOptions.size(); i++) {
+                line.append('\t');
+            }
+            lines.add(line.append(escape(option.getOption())).toString());
+            if (!option.getNestedOptions().isEmpty()) {
+                remainingOptions.push(option.getNestedOptions().iterator());
+            }
+        }
+    }
+
+    private Optional<List<CascadingSelectOption>> readOptionsFrom(List<String> lines) {
+        List<CascadingSelectOption> options = Lists.newArrayList();
+        List<CascadingSelectOption> openOptions = Lists.newArrayList();
+        List<List<CascadingSelectOption>> openChildren = Lists.newArrayList();
+
+        for(String line : lines) {
+            int level = 0;
+            while (level < line.length() && line.charAt(level) == '\t') {
+                level++;
+            }
+            if (level > openOptions.size()) {
+                logger.warn("Ignoring corrupted snapshot " + snapshotFile);
+                return Optional.absent();
+            }
+            while (openOptions.size() > level) {
+                closeLastOption(openOptions, openChildren);
+            }
+            CascadingSelectOption parent = (level == 0) ? null : openOptions.get(level - 1);
+            CascadingSelectOption option = new CascadingSelectOption(unescape(line.substring(level)), parent);
+            if (level == 0) {
+                options.add(option);
+            } else {
+                openChildren.get(level - 1).add(option);
+            }
+            openOptions.add(option);
+            openChildren.add(Lists.<CascadingSelectOption>newArrayList());
+        }
+        while (!openOptions.isEmpty()) {
+            closeLastOption(openOptions, openChildren);
+        }
+        return Optional.of(options);
+    }
+
+    private void closeLastOption(List<CascadingSelectOption> openOptions,
+                                 List<List<CascadingSelectOption>> openChildren) {
+        CascadingSelectOption option = openOptions.remove(openOptions.size() - 1);
+        List<CascadingSelectOption> children = openChildren.remove(openChildren.size() - 1);
+        if (!children.isEmpty()) {
+            option.addChildren(children);
+        }
+    }
+
+    private String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private String unescape(String value) {
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++) {
+            char next = value.charAt(i);
+            if (next == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                switch (escaped) {
+                    case 't': unescaped.append('\t'); break;
+                    case 'n': unescaped.append('\n'); break;
+                    case 'r': unescaped.append('\r'); break;
+                    default: unescaped.append(escaped);
+                }
+            } else {
+                unescaped.append(next);
+            }
+        }
+        return unescaped.toString();
+    }
+}
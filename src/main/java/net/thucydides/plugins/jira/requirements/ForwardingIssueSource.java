@@ -0,0 +1,37 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ForwardingObject;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONException;
+
+import java.util.List;
+
+/**
+ * An issue source that passes every call on to another one. Decorators extend this class and only override
+ * the calls they change, so that they can be stacked in any order, e.g.
+ * <pre>
+ *     new MyMetricsSource(new MyRecordingSource(new JerseyIssueSource(jiraClient)))
+ * </pre>
+ */
+public abstract class ForwardingIssueSource extends ForwardingObject implements IssueSource {
+
+    @Override
+    protected abstract IssueSource delegate();
+
+    @Override
+    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+        return delegate().findByKey(key);
+    }
+
+    @Override
+    public List<IssueSummary> findByJQL(String query) throws JSONException {
+        return delegate().findByJQL(query);
+    }
+
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        return delegate().findOptionsForCascadingSelect(fieldName);
+    }
+}
@@ -0,0 +1,183 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AtomicDouble;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps timers, counters and gauges in memory. Recording is thread-safe and does not lock,
+ * so that it can be left on during report runs. The toString() method gives a summary of all the metrics.
+ */
+public class InMemoryMetricsRecorder implements MetricsRecorder {
+
+    private final ConcurrentMap<String, Timer> timers = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicLong> counters = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicDouble> gauges = Maps.newConcurrentMap();
+
+    @Override
+    public void recordTime(String name, long duration, TimeUnit unit) {
+        getTimer(name).record(unit.toNanos(duration));
+    }
+
+    @Override
+    public void increment(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    @Override
+    public void gauge(String name, double value) {
+        AtomicDouble gauge = gauges.get(name);
+        if (gauge == null) {
+            AtomicDouble newGauge = new AtomicDouble();
+            gauge = gauges.putIfAbsent(name, newGauge);
+            if (gauge == null) {
+                gauge = newGauge;
+            }
+        }
+        gauge.set(value);
+    }
+
+    public Timer getTimer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer newTimer = new Timer();
+            timer = timers.putIfAbsent(name, newTimer);
+            if (timer == null) {
+                timer = newTimer;
+            }
+        }
+        return timer;
+    }
+
+    public long getCount(String name) {
+        AtomicLong counter = counters.get(name);
+        return (counter == null) ? 0 : counter.get();
+    }
+
+    public double getGauge(String name) {
+        AtomicDouble gauge = gauges.get(name);
+        return (gauge == null) ? 0 : gauge.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for(Map.Entry<String, Timer> timer : ImmutableSortedMap.copyOf(timers).entrySet()) {
+            summary.append(timer.getKey()).append(": ").append(timer.getValue()).append("\n");
+        }
+        for(Map.Entry<String, AtomicLong> counter : ImmutableSortedMap.copyOf(counters).entrySet()) {
+            summary.append(counter.getKey()).append(": ").append(counter.getValue().get()).append("\n");
+        }
+        for(Map.Entry<String, AtomicDouble> gauge : ImmutableSortedMap.copyOf(gauges).entrySet()) {
+            summary.append(gauge.getKey()).append(": ")
+                   .append(String.format("%.3f", gauge.getValue().get())).append("\n");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * A latency histogram. Each power of two is split into eight buckets, so percentiles are accurate
+     * to within an eighth of their value, whatever the range of the recorded times.
+     */
+    public static class Timer {
+
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(bucketFor(value));
+            count.incrementAndGet();
+            totalNanos.addAndGet(value);
+            long max = maxNanos.get();
+            while (value > max && !maxNanos.compareAndSet(max, value)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMean(TimeUnit unit) {
+            long recorded = count.get();
+            return (recorded == 0) ? 0 : toUnit(totalNanos.get(), unit) / recorded;
+        }
+
+        public double getMax(TimeUnit unit) {
+            return toUnit(maxNanos.get(), unit);
+        }
+
+        /**
+         * The time below which this percentage of the recorded times fall, rounded up to the end of its bucket.
+         */
+        public double getPercentile(double percentile, TimeUnit unit) {
+            long recorded = count.get();
+            if (recorded == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+            long seen = 0;
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= rank) {
+                    return toUnit(Math.min(upperBoundOf(bucket), maxNanos.get()), unit);
+                }
+            }
+            return getMax(unit);
+        }
+
+        static int bucketFor(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+            int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+            long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        }
+
+        private double toUnit(long nanos, TimeUnit unit) {
+            return (double) nanos / unit.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.2f ms, p50=%.2f ms, p95=%.2f ms, p99=%.2f ms, max=%.2f ms",
+                                 getCount(),
+                                 getMean(TimeUnit.MILLISECONDS),
+                                 getPercentile(50, TimeUnit.MILLISECONDS),
+                                 getPercentile(95, TimeUnit.MILLISECONDS),
+                                 getPercentile(99, TimeUnit.MILLISECONDS),
+                                 getMax(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import org.json.JSONException;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, thread-safe cache of the issues read from JIRA, so that each issue key is only fetched once
+ * during a report run. Keys that JIRA does not know about are remembered for a limited time, so that stale
+ * issue references are not looked up again and again. Other failed lookups are not cached.
+ * Concurrent lookups of an issue that is not cached yet wait for the first of them, so JIRA only receives
+ * one request for the issue, even with a cache size of 0.
+ * Other calls go straight to the underlying issue source.
+ */
+class IssueCache extends ForwardingIssueSource {
+
+    private final IssueSource issueSource;
+    private final LoadingCache<String, Optional<IssueSummary>> issues;
+    private final Cache<String, Boolean> missingIssues;
+    private final ConcurrentMap<String, ListenableFuture<Optional<IssueSummary>>> lookupsInFlight
+            = Maps.newConcurrentMap();
+
+    private final org.slf4j.Logger logger = LoggerFactory.getLogger(IssueCache.class);
+
+    IssueCache(IssueSource issueSource, long maximumSize, long missingIssueTimeToLive) {
+        this(issueSource, maximumSize, missingIssueTimeToLive, 0);
+    }
+
+    /**
+     * @param issueTimeToLive how long an issue is kept after it was read, in milliseconds, or 0 to keep it
+     *                        until it is evicted or the cache is invalidated
+     */
+    IssueCache(final IssueSource issueSource, long maximumSize, long missingIssueTimeToLive, long issueTimeToLive) {
+        this.issueSource = issueSource;
+        missingIssues = CacheBuilder.newBuilder()
+                                    .maximumSize(maximumSize)
+                                    .expireAfterWrite(missingIssueTimeToLive, TimeUnit.MILLISECONDS)
+                                    .recordStats()
+                                    .build();
+        issues = expiringAfter(issueTimeToLive, CacheBuilder.newBuilder())
+                             .maximumSize(maximumSize)
+                             .recordStats()
+                             .build(new CacheLoader<String, Optional<IssueSummary>>() {
+                                 @Override
+                                 public Optional<IssueSummary> load(String issueKey) throws JSONException {
+                                     return issueSource.findByKey(issueKey);
+                                 }
+                             });
+    }
+
+    static CacheBuilder<Object, Object> expiringAfter(long timeToLive, CacheBuilder<Object, Object> cacheBuilder) {
+        return (timeToLive > 0) ? cacheBuilder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS) : cacheBuilder;
+    }
+
+    /**
+     * Forget the issues read so far, and the keys known to be missing, e.g. when the requirements are refreshed.
+     */
+    public void invalidateAll() {
+        issues.invalidateAll();
+        missingIssues.invalidateAll();
+    }
+
+    @Override
+    protected IssueSource delegate() {
+        return issueSource;
+    }
+
+    /**
+     * The issue with this key, or nothing if JIRA does not know about it.
+     */
+    @Override
+    public Optional<IssueSummary> findByKey(String issueKey) throws JSONException {
+        if (missingIssues.getIfPresent(issueKey) != null) {
+            return Optional.absent();
+        }
+        try {
+            return issues.get(issueKey);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JSONException && noSuchIssue((JSONException) e.getCause())) {
+                missingIssues.put(issueKey, Boolean.TRUE);
+                return Optional.absent();
+            }
+            Throwables.propagateIfInstanceOf(e.getCause(), JSONException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * The issue with this key, without blocking the calling thread. Issues that are cached or known to be missing
+     * are returned at once. Others are read on one of the lookup threads of the executor, which bounds the number
+     * of concurrent JIRA requests. Callers asking for an issue that is already being read share the same future,
+     * so they do not hold a thread while they wait for it.
+     */
+    public ListenableFuture<Optional<IssueSummary>> findByKeyAsync(final String issueKey, Executor lookupExecutor) {
+        if (missingIssues.asMap().containsKey(issueKey) || issues.asMap().containsKey(issueKey)) {
+            try {
+                return Futures.immediateFuture(findByKey(issueKey));
+            } catch (JSONException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+        final SettableFuture<Optional<IssueSummary>> lookup = SettableFuture.create();
+        ListenableFuture<Optional<IssueSummary>> lookupInFlight = lookupsInFlight.putIfAbsent(issueKey, lookup);
+        if (lookupInFlight != null) {
+            return lookupInFlight;
+        }
+        lookupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lookup.set(findByKey(issueKey));
+                } catch (Throwable e) {
+                    lookup.setException(e);
+                } finally {
+                    lookupsInFlight.remove(issueKey, lookup);
+                }
+            }
+        });
+        return lookup;
+    }
+
+    private boolean noSuchIssue(JSONException e) {
+        return e.getMessage().contains("error 400");
+    }
+
+    /**
+     * Load the issues that are neither cached nor known to be missing using one JQL query per batch of keys.
+     *
+     * JIRA rejects the whole query if a single key in it is unknown, so a rejected batch is split in two halves
+     * that are queried in turn, until the unknown keys are on their own. A key rejected on its own is unknown,
+     * and is remembered as missing. Keys that a query does not return, such as those of issues that were moved
+     * to another project, and the issues of a batch that cannot be loaded for another reason, are looked up
+     * one by one when they are needed.
+     */
+    public void prefetch(Collection<String> issueKeys, int batchSize) {
+        List<String> keysToLoad = Lists.newArrayList();
+        for(String issueKey : issueKeys) {
+            if (!issues.asMap().containsKey(issueKey) && !missingIssues.asMap().containsKey(issueKey)) {
+                keysToLoad.add(issueKey);
+            }
+        }
+        Deque<List<String>> batches = new ArrayDeque<List<String>>();
+        Iterables.addAll(batches, Iterables.partition(keysToLoad, batchSize));
+        while (!batches.isEmpty()) {
+            List<String> batch = batches.pop();
+            try {
+                for(IssueSummary issue : issueSource.findByJQL(keysIn(batch))) {
+                    issues.put(issue.getKey(), Optional.of(issue));
+                }
+            } catch (JSONException e) {
+                if (noSuchIssue(e) && batch.size() > 1) {
+                    batches.push(batch.subList(batch.size() / 2, batch.size()));
+                    batches.push(batch.subList(0, batch.size() / 2));
+                } else if (noSuchIssue(e)) {
+                    missingIssues.put(batch.get(0), Boolean.TRUE);
+                } else {
+                    logger.warn("Could not prefetch issues " + batch, e);
+                }
+            }
+        }
+    }
+
+    private String keysIn(List<String> issueKeys) {
+        return "key in (\"" + Joiner.on("\",\"").join(issueKeys) + "\")";
+    }
+
+    public CacheStats stats() {
+        return issues.stats();
+    }
+
+    /**
+     * A hit is a lookup of a key already known to be missing, which did not need a call to JIRA.
+     */
+    public CacheStats missingIssueStats() {
+        return missingIssues.stats();
+    }
+}
@@ -0,0 +1,28 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONException;
+
+import java.util.List;
+
+/**
+ * Where the requirements provider reads its issues and cascading select options from.
+ * The default source reads them from JIRA with a {@link JerseyIssueSource}; other sources can add caching,
+ * batching, metrics or recorded data on top of it by extending {@link ForwardingIssueSource}.
+ */
+public interface IssueSource {
+
+    /**
+     * The issue with this key, or nothing if there is no such issue.
+     */
+    Optional<IssueSummary> findByKey(String key) throws JSONException;
+
+    List<IssueSummary> findByJQL(String query) throws JSONException;
+
+    /**
+     * The options of a cascading select field, or an empty list if they cannot be read.
+     */
+    List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName);
+}
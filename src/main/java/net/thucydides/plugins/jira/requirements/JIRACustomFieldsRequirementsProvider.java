@@ -1,13 +1,28 @@
 package net.thucydides.plugins.jira.requirements;
 
 import ch.lambdaj.function.convert.Converter;
-import com.beust.jcommander.internal.Maps;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.thucydides.core.guice.Injectors;
 import net.thucydides.core.model.Release;
 import net.thucydides.core.model.TestOutcome;
@@ -17,6 +32,7 @@ import net.thucydides.core.requirements.RequirementsTagProvider;
 import net.thucydides.core.requirements.model.Requirement;
 import net.thucydides.core.util.EnvironmentVariables;
 import net.thucydides.plugins.jira.client.JerseyJiraClient;
+import net.thucydides.plugins.jira.domain.CustomFieldCast;
 import net.thucydides.plugins.jira.domain.IssueSummary;
 import net.thucydides.plugins.jira.model.CascadingSelectOption;
 import net.thucydides.plugins.jira.service.JIRAConfiguration;
@@ -24,12 +40,24 @@ import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration;
 import org.json.JSONException;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static ch.lambdaj.Lambda.convert;
+import static net.thucydides.core.ThucydidesSystemProperty.THUCYDIDES_OUTPUT_DIRECTORY;
 import static net.thucydides.core.ThucydidesSystemProperty.THUCYDIDES_REQUIREMENT_TYPES;
 
 
@@ -47,16 +75,48 @@ import static net.thucydides.core.ThucydidesSystemProperty.THUCYDIDES_REQUIREMEN
  * releases/iterations for the project. This feature is deactivated by default, but can be activated
  * by setting the 'thucydides.use.customfield.releases' property to true. The field used can be configured using the
  * 'thucydides.releases.custom.field' property.
+ *
+ * Reading the cascading select options from JIRA can be slow. If the 'thucydides.jira.snapshot.ttl' property is set,
+ * the options are saved in the 'jira-snapshots' directory under the output directory (or in the directory given by
+ * 'thucydides.jira.snapshot.directory'), and reused by later runs for that many minutes.
+ * With 'thucydides.jira.eager.load' set to true, the requirements (and the releases, if they are used) start
+ * loading in the background as soon as the provider is created, instead of when they are first needed.
+ *
+ * Long-lived providers can read new options with {@link #refresh()}, or every 'thucydides.jira.refresh.interval'
+ * minutes. Requirements that have not changed are kept, and the refreshed tree replaces the old one in a single step,
+ * so readers never wait for a refresh. A refresh always reads the options from JIRA, and updates their snapshots.
+ * A refresh also drops the issues read so far. Without refreshes, issues are kept until they are evicted,
+ * or for at most 'thucydides.jira.issue.ttl' minutes if that is set.
+ *
+ * The provider times its JIRA calls and tag lookups, and records the size of the requirements tree and the
+ * issue cache hit ratios. Set 'thucydides.jira.metrics.summary' to true to log a summary of these metrics
+ * when the JVM shuts down.
+ *
+ * Requests that JIRA throttles are retried up to 'thucydides.jira.max.retries' times (3 by default), after a random
+ * delay that starts at up to 'thucydides.jira.retry.backoff' milliseconds (500) and doubles with each retry.
+ * Set 'thucydides.jira.max.requests.per.second' to limit the request rate: the provider then slows down when
+ * JIRA throttles it, and speeds up again towards that limit while it does not.
+ *
+ * The framework can create several providers. Those created from a JIRA configuration share what they load
+ * with the other providers of the same configuration, so the trees and issues are only read from JIRA once.
  */
 public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProvider, ReleaseProvider {
 
-    private List<Requirement> requirements = null;
-    private Map<Requirement, List<Requirement>> requirementAncestors = null;
+    private final ProviderState state;
+
+    private final Object requirementsLock;
+    private final Object releasesLock;
 
-    private final JerseyJiraClient jiraClient;
+    private final IssueCache issueCache;
+    private final int prefetchBatchSize;
+    private final long emptyOptionsRetryInterval;
+    private final ListeningExecutorService lookupExecutor;
+    private final ListeningExecutorService asyncLookupExecutor;
     private final String requirementsField;
     private final String releaseField;
-    private final List<String> requirementTypes;
+    private final RequirementConverter requirementConverter;
+    private final ReleaseConverter releaseConverter = new ReleaseConverter();
+    private final MetricsRecorder metrics;
 
     private final boolean releaseProviderActive;
 
@@ -73,6 +133,48 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
     public final static String CUSTOMFIELD_RELEASES_PROPERTY = "thucydides.releases.custom.field";
     public final static String DEFAULT_RELEASE_FIELD = "Release";
 
+    public final static String ISSUE_CACHE_SIZE_PROPERTY = "thucydides.jira.issue.cache.size";
+    public final static int DEFAULT_ISSUE_CACHE_SIZE = 10000;
+
+    public final static String MISSING_ISSUE_TTL_PROPERTY = "thucydides.jira.missing.issue.ttl";
+    public final static int DEFAULT_MISSING_ISSUE_TTL = 10;
+
+    public final static String ISSUE_TTL_PROPERTY = "thucydides.jira.issue.ttl";
+
+    public final static String PREFETCH_BATCH_SIZE_PROPERTY = "thucydides.jira.prefetch.batch.size";
+    public final static int DEFAULT_PREFETCH_BATCH_SIZE = 50;
+
+    public final static String SNAPSHOT_TTL_PROPERTY = "thucydides.jira.snapshot.ttl";
+    public final static String SNAPSHOT_DIRECTORY_PROPERTY = "thucydides.jira.snapshot.directory";
+    private final static String DEFAULT_OUTPUT_DIRECTORY = "target/site/thucydides";
+    private final static String DEFAULT_SNAPSHOT_DIRECTORY = "jira-snapshots";
+
+    public final static String PARALLEL_LOOKUPS_PROPERTY = "thucydides.jira.parallel.lookups";
+    public final static int DEFAULT_PARALLEL_LOOKUPS = 1;
+
+    public final static String ASYNC_LOOKUPS_PROPERTY = "thucydides.jira.async.lookups";
+    public final static int DEFAULT_ASYNC_LOOKUPS = 4;
+
+    public final static String METRICS_SUMMARY_PROPERTY = "thucydides.jira.metrics.summary";
+
+    public final static String EAGER_LOAD_PROPERTY = "thucydides.jira.eager.load";
+
+    public final static String REFRESH_INTERVAL_PROPERTY = "thucydides.jira.refresh.interval";
+
+    public final static String EMPTY_OPTIONS_RETRY_INTERVAL_PROPERTY = "thucydides.jira.empty.options.retry.interval";
+    public final static int DEFAULT_EMPTY_OPTIONS_RETRY_INTERVAL = 60;
+
+    public final static String KEEP_ALIVE_PROPERTY = "thucydides.jira.keep.alive";
+    public final static String COMPRESSED_RESPONSES_PROPERTY = "thucydides.jira.compressed.responses";
+
+    public final static String MAX_REQUESTS_PER_SECOND_PROPERTY = "thucydides.jira.max.requests.per.second";
+    public final static String MAX_RETRIES_PROPERTY = "thucydides.jira.max.retries";
+    public final static int DEFAULT_MAX_RETRIES = 3;
+    public final static String RETRY_BACKOFF_PROPERTY = "thucydides.jira.retry.backoff";
+    public final static int DEFAULT_RETRY_BACKOFF = 500;
+
+    private final static long IDLE_THREAD_TIMEOUT_IN_SECONDS = 60;
+
     private final String STRINGS = "";
 
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(JIRACustomFieldsRequirementsProvider.class);
@@ -82,27 +184,314 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
              Injectors.getInjector().getInstance(EnvironmentVariables.class));
     }
 
+    /**
+     * Providers created this way share their trees, caches and lookup threads with the other providers
+     * created this way for the same JIRA server, project, user and password, issue type, custom fields
+     * and requirement types, as long as they also have the same cache, lookup, request and refresh settings.
+     */
     public JIRACustomFieldsRequirementsProvider(JIRAConfiguration jiraConfiguration,
                                                 EnvironmentVariables environmentVariables) {
+        this(jiraConfiguration, environmentVariables, sharedStateFor(jiraConfiguration, environmentVariables));
+    }
+
+    /**
+     * Read the requirements and issues from another issue source, such as the default JIRA source
+     * wrapped in decorators, or a source that serves canned data in benchmarks.
+     * The issue cache and the option snapshots configured in the environment are added on top of it.
+     */
+    public JIRACustomFieldsRequirementsProvider(JIRAConfiguration jiraConfiguration,
+                                                EnvironmentVariables environmentVariables,
+                                                IssueSource issueSource) {
+        this(jiraConfiguration, environmentVariables, issueSource, new InMemoryMetricsRecorder());
+    }
+
+    /**
+     * Send the metrics of this provider to another recorder, e.g. one that forwards them to a metrics registry.
+     */
+    public JIRACustomFieldsRequirementsProvider(JIRAConfiguration jiraConfiguration,
+                                                EnvironmentVariables environmentVariables,
+                                                IssueSource issueSource,
+                                                MetricsRecorder metrics) {
+        this(jiraConfiguration, environmentVariables,
+             newStateFor(jiraConfiguration, environmentVariables, issueSource, metrics));
+    }
+
+    private JIRACustomFieldsRequirementsProvider(JIRAConfiguration jiraConfiguration,
+                                                 EnvironmentVariables environmentVariables,
+                                                 ProviderState state) {
         logConnectionDetailsFor(jiraConfiguration);
 
+        this.state = state;
+        requirementsLock = state.requirementsLock;
+        releasesLock = state.releasesLock;
+        issueCache = state.issueCache;
+        lookupExecutor = state.lookupExecutor;
+        asyncLookupExecutor = state.asyncLookupExecutor;
+        metrics = state.metrics;
+
         releaseProviderActive = environmentVariables.getPropertyAsBoolean(USE_CUSTOMFIELD_RELEASES, false);
-        String issueType = environmentVariables.getProperty(ISSUETYPE_PROPERTY, DEFAULT_ISSUETYPE);
         requirementsField = environmentVariables.getProperty(CUSTOM_FIELD_PROPERTY, DEFAULT_CUSTOM_FIELD);
         releaseField = environmentVariables.getProperty(CUSTOMFIELD_RELEASES_PROPERTY, DEFAULT_RELEASE_FIELD);
-        requirementTypes = Splitter.on(",").trimResults().splitToList(
+        prefetchBatchSize = environmentVariables.getPropertyAsInteger(PREFETCH_BATCH_SIZE_PROPERTY,
+                                                                      DEFAULT_PREFETCH_BATCH_SIZE);
+        emptyOptionsRetryInterval = TimeUnit.SECONDS.toNanos(environmentVariables.getPropertyAsInteger(
+                EMPTY_OPTIONS_RETRY_INTERVAL_PROPERTY, DEFAULT_EMPTY_OPTIONS_RETRY_INTERVAL));
+        requirementConverter = new RequirementConverter(requirementTypesFrom(environmentVariables));
+
+        if (state.start()) {
+            startBackgroundWork(jiraConfiguration, environmentVariables);
+        }
+    }
+
+    private void startBackgroundWork(JIRAConfiguration jiraConfiguration, EnvironmentVariables environmentVariables) {
+        if (environmentVariables.getPropertyAsBoolean(METRICS_SUMMARY_PROPERTY, false)) {
+            state.logMetricsSummaryOnShutdown();
+        }
+        if (environmentVariables.getPropertyAsBoolean(EAGER_LOAD_PROPERTY, false)) {
+            startLoadingInBackground();
+        }
+        int refreshInterval = environmentVariables.getPropertyAsInteger(REFRESH_INTERVAL_PROPERTY, 0);
+        if (refreshInterval > 0) {
+            scheduleRefreshes(jiraConfiguration, environmentVariables, state, refreshInterval);
+        }
+    }
+
+    /**
+     * Providers share a state when their configurations read the same trees and issues, and when the settings
+     * the state is built and started with are the same, so that no provider silently runs with the cache sizes,
+     * timeouts or request limits of another one. The registry keeps a hash of the password rather than
+     * the password itself.
+     */
+    private static ProviderState sharedStateFor(final JIRAConfiguration jiraConfiguration,
+                                                final EnvironmentVariables environmentVariables) {
+        List<?> configuration = Arrays.asList(jiraConfiguration.getJiraUrl(),
+                                              jiraConfiguration.getProject(),
+                                              jiraConfiguration.getJiraUser(),
+                                              Hashing.sha256().hashString(
+                                                      Strings.nullToEmpty(jiraConfiguration.getJiraPassword()),
+                                                      Charsets.UTF_8),
+                                              environmentVariables.getProperty(ISSUETYPE_PROPERTY, DEFAULT_ISSUETYPE),
+                                              environmentVariables.getProperty(CUSTOM_FIELD_PROPERTY,
+                                                                               DEFAULT_CUSTOM_FIELD),
+                                              environmentVariables.getPropertyAsBoolean(USE_CUSTOMFIELD_RELEASES, false),
+                                              environmentVariables.getProperty(CUSTOMFIELD_RELEASES_PROPERTY,
+                                                                               DEFAULT_RELEASE_FIELD),
+                                              requirementTypesFrom(environmentVariables),
+                                              stateSettingsFrom(environmentVariables));
+        return ProviderState.sharedBy(configuration, new Callable<ProviderState>() {
+            @Override
+            public ProviderState call() {
+                return newStateFor(jiraConfiguration, environmentVariables,
+                                   defaultIssueSourceFor(jiraConfiguration, environmentVariables),
+                                   new InMemoryMetricsRecorder());
+            }
+        });
+    }
+
+    /**
+     * The settings read by {@link #newStateFor} and {@link #defaultIssueSourceFor} to build a state,
+     * and by {@link #startBackgroundWork} when the state is first used.
+     */
+    private static List<?> stateSettingsFrom(EnvironmentVariables environmentVariables) {
+        return Arrays.asList(
+                environmentVariables.getPropertyAsInteger(ISSUE_CACHE_SIZE_PROPERTY, DEFAULT_ISSUE_CACHE_SIZE),
+                environmentVariables.getPropertyAsInteger(MISSING_ISSUE_TTL_PROPERTY, DEFAULT_MISSING_ISSUE_TTL),
+                environmentVariables.getPropertyAsInteger(ISSUE_TTL_PROPERTY, 0),
+                environmentVariables.getPropertyAsInteger(SNAPSHOT_TTL_PROPERTY, 0),
+                snapshotDirectoryFrom(environmentVariables),
+                environmentVariables.getPropertyAsInteger(PARALLEL_LOOKUPS_PROPERTY, DEFAULT_PARALLEL_LOOKUPS),
+                environmentVariables.getPropertyAsInteger(ASYNC_LOOKUPS_PROPERTY, DEFAULT_ASYNC_LOOKUPS),
+                environmentVariables.getPropertyAsInteger(MAX_REQUESTS_PER_SECOND_PROPERTY, 0),
+                environmentVariables.getPropertyAsInteger(MAX_RETRIES_PROPERTY, DEFAULT_MAX_RETRIES),
+                environmentVariables.getPropertyAsInteger(RETRY_BACKOFF_PROPERTY, DEFAULT_RETRY_BACKOFF),
+                environmentVariables.getPropertyAsBoolean(KEEP_ALIVE_PROPERTY, true),
+                environmentVariables.getPropertyAsBoolean(COMPRESSED_RESPONSES_PROPERTY, false),
+                environmentVariables.getPropertyAsBoolean(METRICS_SUMMARY_PROPERTY, false),
+                environmentVariables.getPropertyAsBoolean(EAGER_LOAD_PROPERTY, false),
+                environmentVariables.getPropertyAsInteger(REFRESH_INTERVAL_PROPERTY, 0));
+    }
+
+    private static ProviderState newStateFor(JIRAConfiguration jiraConfiguration,
+                                             EnvironmentVariables environmentVariables,
+                                             IssueSource issueSource,
+                                             MetricsRecorder metrics) {
+        String issueType = environmentVariables.getProperty(ISSUETYPE_PROPERTY, DEFAULT_ISSUETYPE);
+        issueSource = new MeteredIssueSource(issueSource, metrics);
+        issueSource = new ThrottledIssueSource(issueSource,
+                                               environmentVariables.getPropertyAsInteger(MAX_REQUESTS_PER_SECOND_PROPERTY, 0),
+                                               environmentVariables.getPropertyAsInteger(MAX_RETRIES_PROPERTY,
+                                                                                         DEFAULT_MAX_RETRIES),
+                                               environmentVariables.getPropertyAsInteger(RETRY_BACKOFF_PROPERTY,
+                                                                                         DEFAULT_RETRY_BACKOFF),
+                                               metrics);
+        long snapshotTimeToLive
+                = TimeUnit.MINUTES.toMillis(environmentVariables.getPropertyAsInteger(SNAPSHOT_TTL_PROPERTY, 0));
+        Optional<SnapshotIssueSource> snapshots = Optional.absent();
+        if (snapshotTimeToLive > 0) {
+            snapshots = Optional.of(new SnapshotIssueSource(issueSource,
+                                                            snapshotDirectoryFrom(environmentVariables),
+                                                            jiraConfiguration.getJiraUrl() + "/"
+                                                            + jiraConfiguration.getProject() + "/" + issueType,
+                                                            snapshotTimeToLive));
+            issueSource = snapshots.get();
+        }
+        int issueCacheSize = environmentVariables.getPropertyAsInteger(ISSUE_CACHE_SIZE_PROPERTY,
+                                                                       DEFAULT_ISSUE_CACHE_SIZE);
+        long issueTimeToLive
+                = TimeUnit.MINUTES.toMillis(environmentVariables.getPropertyAsInteger(ISSUE_TTL_PROPERTY, 0));
+        IssueCache issueCache = new IssueCache(issueSource,
+                                               issueCacheSize,
+                                               TimeUnit.MINUTES.toMillis(
+                                                       environmentVariables.getPropertyAsInteger(MISSING_ISSUE_TTL_PROPERTY,
+                                                                                                 DEFAULT_MISSING_ISSUE_TTL)),
+                                               issueTimeToLive);
+        return new ProviderState(issueCache,
+                                 snapshots,
+                                 issueCacheSize,
+                                 issueTimeToLive,
+                                 lookupExecutorFor(environmentVariables.getPropertyAsInteger(PARALLEL_LOOKUPS_PROPERTY,
+                                                                                             DEFAULT_PARALLEL_LOOKUPS)),
+                                 daemonExecutor(environmentVariables.getPropertyAsInteger(ASYNC_LOOKUPS_PROPERTY,
+                                                                                          DEFAULT_ASYNC_LOOKUPS),
+                                                "jira-async-lookup-%d"),
+                                 metrics);
+    }
+
+    private static List<String> requirementTypesFrom(EnvironmentVariables environmentVariables) {
+        return Splitter.on(",").trimResults().splitToList(
                 THUCYDIDES_REQUIREMENT_TYPES.from(environmentVariables, DEFAULT_REQUIREMENTS_TYPES));
+    }
+
+    /**
+     * A failed refresh is logged rather than rethrown, as it would cancel the following refreshes.
+     * The refresh task only holds the state weakly and refreshes it through a provider made for each refresh,
+     * so that it keeps neither the state nor the providers using it in memory. Once the state is gone,
+     * the refresh thread stops.
+     */
+    private static void scheduleRefreshes(final JIRAConfiguration jiraConfiguration,
+                                          final EnvironmentVariables environmentVariables,
+                                          ProviderState state,
+                                          int refreshIntervalInMinutes) {
+        final WeakReference<ProviderState> stateReference = new WeakReference<ProviderState>(state);
+        final ScheduledExecutorService refreshExecutor
+                = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                       .setNameFormat("jira-refresh-%d")
+                                                                                       .build());
+        refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ProviderState state = stateReference.get();
+                if (state == null) {
+                    refreshExecutor.shutdown();
+                    return;
+                }
+                try {
+                    new JIRACustomFieldsRequirementsProvider(jiraConfiguration, environmentVariables, state).refresh();
+                } catch (RuntimeException e) {
+                    LoggerFactory.getLogger(JIRACustomFieldsRequirementsProvider.class)
+                                 .warn("Could not refresh the requirements and releases", e);
+                }
+            }
+        }, refreshIntervalInMinutes, refreshIntervalInMinutes, TimeUnit.MINUTES);
+    }
 
-        List<String> customFields = Lists.newArrayList(requirementsField);
+    /**
+     * The requirements and releases are loaded in parallel, each by the same locked code as a lazy load,
+     * so a caller that needs them before they are ready just waits for the background load to finish.
+     * If a background load fails, the next caller tries again.
+     */
+    private void startLoadingInBackground() {
+        ListeningExecutorService warmUpExecutor = daemonExecutor(2, "jira-warm-up-%d");
+        warmUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getRequirementIndex();
+                } catch (RuntimeException e) {
+                    logger.warn("Could not load the requirements in the background", e);
+                }
+            }
+        });
         if (releaseProviderActive) {
-            customFields.add(releaseField);
+            warmUpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        getReleases();
+                    } catch (RuntimeException e) {
+                        logger.warn("Could not load the releases in the background", e);
+                    }
+                }
+            });
+        }
+        warmUpExecutor.shutdown();
+    }
+
+    /**
+     * Reads issues and options from the JIRA server in this configuration.
+     *
+     * Requests share one REST client and keep their connections alive, unless 'thucydides.jira.keep.alive'
+     * is false. How many idle connections to the server are kept is a JVM-wide setting: start the JVM with
+     * -Dhttp.maxConnections to keep more than the default of 5 when lookups run in parallel.
+     * Set 'thucydides.jira.compressed.responses' to true to ask JIRA for gzip-compressed responses.
+     */
+    public static IssueSource defaultIssueSourceFor(JIRAConfiguration jiraConfiguration,
+                                                    EnvironmentVariables environmentVariables) {
+        String issueType = environmentVariables.getProperty(ISSUETYPE_PROPERTY, DEFAULT_ISSUETYPE);
+        List<String> customFields = Lists.newArrayList(environmentVariables.getProperty(CUSTOM_FIELD_PROPERTY,
+                                                                                        DEFAULT_CUSTOM_FIELD));
+        if (environmentVariables.getPropertyAsBoolean(USE_CUSTOMFIELD_RELEASES, false)) {
+            customFields.add(environmentVariables.getProperty(CUSTOMFIELD_RELEASES_PROPERTY, DEFAULT_RELEASE_FIELD));
+        }
+        if (!environmentVariables.getPropertyAsBoolean(KEEP_ALIVE_PROPERTY, true)) {
+            return new JerseyIssueSource(new JerseyJiraClient(jiraConfiguration.getJiraUrl(),
+                                                              jiraConfiguration.getJiraUser(),
+                                                              jiraConfiguration.getJiraPassword(),
+                                                              jiraConfiguration.getProject())
+                                         .usingMetadataIssueType(issueType)
+                                         .usingCustomFields(customFields));
+        }
+        return new JerseyIssueSource(new PooledJerseyJiraClient(jiraConfiguration.getJiraUrl(),
+                                                                jiraConfiguration.getJiraUser(),
+                                                                jiraConfiguration.getJiraPassword(),
+                                                                jiraConfiguration.getProject(),
+                                                                issueType,
+                                                                customFields,
+                                                                environmentVariables.getPropertyAsBoolean(
+                                                                        COMPRESSED_RESPONSES_PROPERTY, false)));
+    }
+
+    private static File snapshotDirectoryFrom(EnvironmentVariables environmentVariables) {
+        File outputDirectory = new File(THUCYDIDES_OUTPUT_DIRECTORY.from(environmentVariables, DEFAULT_OUTPUT_DIRECTORY));
+        String defaultSnapshotDirectory = new File(outputDirectory, DEFAULT_SNAPSHOT_DIRECTORY).getPath();
+        return new File(environmentVariables.getProperty(SNAPSHOT_DIRECTORY_PROPERTY, defaultSnapshotDirectory));
+    }
+
+    /**
+     * Issues are looked up on the calling thread unless 'thucydides.jira.parallel.lookups' allows more than one
+     * concurrent JIRA request.
+     */
+    private static ListeningExecutorService lookupExecutorFor(int parallelLookups) {
+        if (parallelLookups <= 1) {
+            return MoreExecutors.sameThreadExecutor();
         }
-        jiraClient = new JerseyJiraClient(jiraConfiguration.getJiraUrl(),
-                                          jiraConfiguration.getJiraUser(),
-                                          jiraConfiguration.getJiraPassword(),
-                                          jiraConfiguration.getProject())
-                     .usingMetadataIssueType(issueType)
-                     .usingCustomFields(customFields);
+        return daemonExecutor(parallelLookups, "jira-lookup-%d");
+    }
+
+    /**
+     * The pool only starts its threads when work is first submitted to it, and stops them after a minute
+     * without work, so the pool of a state that is no longer used does not keep idle threads behind.
+     */
+    private static ListeningExecutorService daemonExecutor(int threads, String nameFormat) {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true)
+                                                                .setNameFormat(nameFormat)
+                                                                .build();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+                                                             IDLE_THREAD_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return MoreExecutors.listeningDecorator(executor);
     }
 
     private void logConnectionDetailsFor(JIRAConfiguration jiraConfiguration) {
@@ -113,86 +502,209 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
 
     @Override
     public List<Requirement> getRequirements() {
-        if (requirements == null) {
-            List<CascadingSelectOption> requirementsOptions = jiraClient.findOptionsForCascadingSelect(requirementsField);
-            requirements = convertToRequirements(requirementsOptions);
+        return getRequirementIndex().getRequirements();
+    }
+
+    /**
+     * The requirements tree and its indexes are loaded by the first thread that needs them.
+     * Other threads wait for that load to finish rather than reading the tree from JIRA again.
+     *
+     * JIRA returns no options at all when the field cannot be read, e.g. when it throttles the request.
+     * An empty tree is kept for 'thucydides.jira.empty.options.retry.interval' seconds (60 by default),
+     * after which the next caller reads the options again, so a field that is really empty is not read
+     * from JIRA on every call. The tags built in the meantime are discarded once the tree is loaded.
+     */
+    private RequirementIndex getRequirementIndex() {
+        RequirementIndex loadedIndex = state.requirementIndex;
+        if (!isLoaded(loadedIndex, state.requirementsReadAt)) {
+            synchronized (requirementsLock) {
+                loadedIndex = state.requirementIndex;
+                if (!isLoaded(loadedIndex, state.requirementsReadAt)) {
+                    long start = System.nanoTime();
+                    List<CascadingSelectOption> requirementsOptions = findOptionsForCascadingSelect(requirementsField);
+                    if (requirementsOptions.isEmpty()) {
+                        logger.warn("No options found for " + requirementsField + ", reading them again in "
+                                    + TimeUnit.NANOSECONDS.toSeconds(emptyOptionsRetryInterval) + " seconds");
+                    }
+                    boolean replacesEmptyTree = (loadedIndex != null);
+                    loadedIndex = RequirementIndex.of(requirementConverter.convertToRequirements(requirementsOptions));
+                    metrics.recordTime("requirements.load", System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    recordTreeMetrics(loadedIndex);
+                    state.requirementsReadAt = System.nanoTime();
+                    state.requirementIndex = loadedIndex;
+                    if (replacesEmptyTree) {
+                        state.issueTags = state.newIssueTagCache();
+                    }
+                }
+            }
         }
-        return requirements;
+        return loadedIndex;
     }
 
-    private List<Release> releases;
+    /**
+     * An empty tree only counts as loaded until it is time to read its options again.
+     */
+    private boolean isLoaded(RequirementIndex index, long readAt) {
+        return (index != null) && (!index.getRequirements().isEmpty() || !timeToReadAgain(readAt));
+    }
+
+    private boolean isLoaded(ReleaseIndex index, long readAt) {
+        return (index != null) && (!index.getReleases().isEmpty() || !timeToReadAgain(readAt));
+    }
+
+    private boolean timeToReadAgain(long readAt) {
+        return System.nanoTime() - readAt >= emptyOptionsRetryInterval;
+    }
 
     public List<Release> getReleases() {
-        logger.info("Loading releases from JIRA custom fields");
-        if (releases == null) {
-            List<CascadingSelectOption> releaseOptions = jiraClient.findOptionsForCascadingSelect(releaseField);
-            releases = new ReleaseConverter().convertToReleases(releaseOptions);
+        return getReleaseIndex().getReleases();
+    }
+
+    /**
+     * The release tree, with lookups of releases by name and by path. It is loaded along with the releases.
+     * As with the requirements, an empty release tree is read again once the retry interval has passed.
+     */
+    public ReleaseIndex getReleaseIndex() {
+        ReleaseIndex loadedIndex = state.releaseIndex;
+        if (!isLoaded(loadedIndex, state.releasesReadAt)) {
+            synchronized (releasesLock) {
+                loadedIndex = state.releaseIndex;
+                if (!isLoaded(loadedIndex, state.releasesReadAt)) {
+                    logger.info("Loading releases from JIRA custom fields");
+                    long start = System.nanoTime();
+                    List<CascadingSelectOption> releaseOptions = findOptionsForCascadingSelect(releaseField);
+                    if (releaseOptions.isEmpty()) {
+                        logger.warn("No options found for " + releaseField + ", reading them again in "
+                                    + TimeUnit.NANOSECONDS.toSeconds(emptyOptionsRetryInterval) + " seconds");
+                    }
+                    loadedIndex = ReleaseIndex.of(releaseConverter.convertToReleases(releaseOptions));
+                    metrics.recordTime("releases.load", System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    state.releasesReadAt = System.nanoTime();
+                    state.releaseIndex = loadedIndex;
+                    logger.info("Releases: " + loadedIndex.getReleases());
+                }
+            }
         }
-        logger.info("Releases: " + releases);
-        return releases;
+        return loadedIndex;
     }
 
+    /**
+     * The release named by a version tag, such as the ones read from the release field of an issue.
+     */
+    public Optional<Release> getReleaseFor(TestTag versionTag) {
+        return getReleaseIndex().findByName(versionTag.getShortName());
+    }
 
+    /**
+     * Read the requirements again, and the releases if they have been loaded, replacing the current ones.
+     */
+    public void refresh() {
+        refreshRequirements();
+        if (state.releaseIndex != null) {
+            refreshReleases();
+        }
+    }
 
-    @Override
-    public boolean isActive() {
-        return releaseProviderActive;
+    /**
+     * Requirements whose options have not changed stay the same instances, and so do their index structures.
+     * JIRA returns no options at all when the field cannot be read, in which case the current tree is kept.
+     * The issues read so far are read again after a refresh, as their requirements and versions may have changed.
+     */
+    public void refreshRequirements() {
+        synchronized (requirementsLock) {
+            issueCache.invalidateAll();
+            RequirementIndex previousIndex = state.requirementIndex;
+            if (previousIndex == null) {
+                previousIndex = RequirementIndex.of(NO_REQUIREMENTS);
+            }
+            long start = System.nanoTime();
+            List<CascadingSelectOption> requirementsOptions = readOptionsAgain(requirementsField);
+            if (requirementsOptions.isEmpty() && !previousIndex.getRequirements().isEmpty()) {
+                logger.warn("No options found for " + requirementsField + ", keeping the current requirements");
+                state.issueTags = state.newIssueTagCache();
+                return;
+            }
+            List<Requirement> requirements
+                    = requirementConverter.convertToRequirements(requirementsOptions, previousIndex.getRequirements());
+            RequirementIndex refreshedIndex = RequirementIndex.of(requirements, previousIndex);
+            metrics.recordTime("requirements.refresh", System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordTreeMetrics(refreshedIndex);
+            state.requirementsReadAt = System.nanoTime();
+            state.requirementIndex = refreshedIndex;
+            state.issueTags = state.newIssueTagCache();
+        }
     }
 
-    public Map<Requirement, List<Requirement>> getRequirementAncestors() {
-        if (requirementAncestors == null) {
-            requirementAncestors = indexAncestors();
+    private void refreshReleases() {
+        synchronized (releasesLock) {
+            List<CascadingSelectOption> releaseOptions = readOptionsAgain(releaseField);
+            if (releaseOptions.isEmpty() && !state.releaseIndex.getReleases().isEmpty()) {
+                logger.warn("No options found for " + releaseField + ", keeping the current releases");
+                return;
+            }
+            state.releasesReadAt = System.nanoTime();
+            state.releaseIndex = ReleaseIndex.of(releaseConverter.convertToReleases(releaseOptions));
         }
-        return requirementAncestors;
     }
 
-    private static List<Requirement> NO_REQUIREMENTS = Lists.newArrayList();
 
-    private Map<Requirement, List<Requirement>> indexAncestors() {
-        requirementAncestors = Maps.newHashMap();
-        for(Requirement requirement : getRequirements()) {
-            requirementAncestors.put(requirement, NO_REQUIREMENTS);
-            indexChildren(ImmutableList.of(requirement), requirement.getChildren(), requirementAncestors);
+
+    private void recordTreeMetrics(RequirementIndex index) {
+        int depth = 0;
+        for(List<Requirement> ancestors : index.getRequirementAncestors().values()) {
+            depth = Math.max(depth, ancestors.size() + 1);
         }
-        return requirementAncestors;
+        metrics.gauge("requirements.nodes", index.getFlattenedRequirements().size());
+        metrics.gauge("requirements.depth", depth);
+        metrics.gauge("requirements.ancestors.size", index.getRequirementAncestors().size());
+    }
+
+    private List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        return issueCache.findOptionsForCascadingSelect(fieldName);
     }
 
-    private void indexChildren(List<Requirement> parents, List<Requirement> children, Map<Requirement, List<Requirement>> requirementAncestors) {
-        for(Requirement child : children) {
-            requirementAncestors.put(child, parents);
-            List<Requirement> parentsAndChild = Lists.newArrayList(parents);
-            parentsAndChild.add(child);
-            indexChildren(parentsAndChild, child.getChildren(), requirementAncestors);
+    /**
+     * A refresh reads the options from JIRA even if a snapshot of them is still fresh, and updates the snapshot.
+     */
+    private List<CascadingSelectOption> readOptionsAgain(String fieldName) {
+        if (state.snapshots.isPresent()) {
+            return state.snapshots.get().findOptionsForCascadingSelectIgnoringSnapshot(fieldName);
         }
+        return findOptionsForCascadingSelect(fieldName);
     }
 
-    private List<Requirement> convertToRequirements(List<CascadingSelectOption> requirementsOptions) {
-        return convertToRequirements(requirementsOptions, 0, "");
+    @Override
+    public boolean isActive() {
+        return releaseProviderActive;
     }
 
-    private List<Requirement> convertToRequirements(List<CascadingSelectOption> requirementsOptions,
-                                                    int requirementLevel,
-                                                    String parentRequirement) {
-        List<Requirement> requirements = Lists.newArrayList();
+    /**
+     * Hit, miss and eviction counts for the issues read from JIRA by this provider.
+     */
+    public CacheStats getIssueCacheStats() {
+        return issueCache.stats();
+    }
 
-        for(CascadingSelectOption option : requirementsOptions) {
-            Requirement newRequirement = Requirement.named(option.getOption())
-                    .withType(requirementType(requirementLevel))
-                    .withNarrative(option.getOption())
-                    .withChildren(convertToRequirements(option.getNestedOptions(), requirementLevel + 1, option.getOption()));
-            if (requirementLevel > 0) {
-                newRequirement = newRequirement.withParent(parentRequirement);
-            }
-            requirements.add(newRequirement);
+    /**
+     * Lookups of issue keys that JIRA reported as unknown within the last 'thucydides.jira.missing.issue.ttl' minutes.
+     */
+    public CacheStats getMissingIssueCacheStats() {
+        return issueCache.missingIssueStats();
+    }
 
-        }
-        return requirements;
+    /**
+     * The metrics recorded by this provider, with the issue cache hit ratios brought up to date.
+     */
+    public MetricsRecorder getMetrics() {
+        state.updateCacheGauges();
+        return metrics;
     }
 
-    private String requirementType(int requirementLevel) {
-        return (requirementLevel < requirementTypes.size()) ? requirementTypes.get(requirementLevel) : requirementTypes.get(requirementTypes.size() - 1);
+    public Map<Requirement, List<Requirement>> getRequirementAncestors() {
+        return getRequirementIndex().getRequirementAncestors();
     }
 
+    private static List<Requirement> NO_REQUIREMENTS = ImmutableList.of();
 
     //////////////////////////////////////
 
@@ -207,28 +719,89 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
     }
 
     private Optional<Requirement> getParentRequirementByIssueKey(String issueKey) {
-        try {
-            Optional<IssueSummary> parentIssue = jiraClient.findByKey(issueKey);
-            if (parentIssue.isPresent()  && parentIssue.get().customField(requirementsField).isPresent()) {
-                List<String> requirementNames = parentIssue.get().customField(requirementsField).get().asListOf(STRINGS);
-                List< Requirement > requirements = requirementsCalled(requirementNames);
-                if (!requirements.isEmpty()) {
-                    return Optional.of(requirements.get(requirements.size() - 1));
-                }
+        Optional<IssueSummary> parentIssue = loadIssue(issueKey);
+        if (parentIssue.isPresent()) {
+            return getParentRequirementOf(parentIssue.get());
+        }
+        return Optional.absent();
+    }
+
+    private Optional<Requirement> getParentRequirementOf(IssueSummary issue) {
+        Optional<CustomFieldCast> requirementsValue = issue.customField(requirementsField);
+        if (requirementsValue.isPresent()) {
+            List<String> requirementNames = requirementsValue.get().asListOf(STRINGS);
+            Optional<Requirement> requirementInTree = getRequirementIndex().findByPath(requirementNames);
+            if (requirementInTree.isPresent()) {
+                return requirementInTree;
             }
-        } catch (JSONException e) {
-            if (noSuchIssue(e)) {
-                return Optional.absent();
-            } else {
-                throw new IllegalArgumentException(e);
+            List< Requirement > requirements = requirementsCalled(requirementNames);
+            if (!requirements.isEmpty()) {
+                return Optional.of(requirements.get(requirements.size() - 1));
             }
         }
         return Optional.absent();
     }
 
+    private Optional<IssueSummary> loadIssue(String issueKey) {
+        try {
+            return issueCache.findByKey(issueKey);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Issues that are not cached are read on one of the 'thucydides.jira.async.lookups' lookup threads,
+     * and a JIRA error fails the returned future as it would fail a blocking lookup.
+     */
+    private ListenableFuture<Optional<IssueSummary>> loadIssueAsync(String issueKey) {
+        return Futures.withFallback(issueCache.findByKeyAsync(issueKey, asyncLookupExecutor),
+                                    new FutureFallback<Optional<IssueSummary>>() {
+                                        @Override
+                                        public ListenableFuture<Optional<IssueSummary>> create(Throwable e) {
+                                            if (e instanceof JSONException) {
+                                                e = new IllegalArgumentException(e);
+                                            }
+                                            return Futures.immediateFailedFuture(e);
+                                        }
+                                    });
+    }
+
+    /**
+     * Look up the parent requirement of a test outcome without blocking the calling thread.
+     * The requirement is found once the issue has been read, on the thread that read it.
+     */
+    public ListenableFuture<Optional<Requirement>> getParentRequirementOfAsync(TestOutcome testOutcome) {
+        List<String> issueKeys = testOutcome.getIssueKeys();
+        if (issueKeys.isEmpty()) {
+            return Futures.immediateFuture(Optional.<Requirement>absent());
+        }
+        return Futures.transform(loadIssueAsync(issueKeys.get(0)),
+                                 new Function<Optional<IssueSummary>, Optional<Requirement>>() {
+                                     @Override
+                                     public Optional<Requirement> apply(Optional<IssueSummary> parentIssue) {
+                                         return parentIssue.isPresent() ? getParentRequirementOf(parentIssue.get())
+                                                                        : Optional.<Requirement>absent();
+                                     }
+                                 });
+    }
+
     public List<Requirement> getAssociatedRequirements(TestOutcome testOutcome) {
+        return associatedRequirementsOf(getParentRequirementOf(testOutcome));
+    }
+
+    public ListenableFuture<List<Requirement>> getAssociatedRequirementsAsync(TestOutcome testOutcome) {
+        return Futures.transform(getParentRequirementOfAsync(testOutcome),
+                                 new Function<Optional<Requirement>, List<Requirement>>() {
+                                     @Override
+                                     public List<Requirement> apply(Optional<Requirement> parent) {
+                                         return associatedRequirementsOf(parent);
+                                     }
+                                 });
+    }
+
+    private List<Requirement> associatedRequirementsOf(Optional<Requirement> parent) {
         List<Requirement> associatedRequirements = Lists.newArrayList();
-        Optional<Requirement> parent = getParentRequirementOf(testOutcome);
         if (parent.isPresent()) {
             associatedRequirements.add(parent.get());
             associatedRequirements.addAll(parentsOf(parent.get()));
@@ -237,11 +810,8 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
     }
 
     private List<? extends Requirement> parentsOf(Requirement requirement) {
-        if (getRequirementAncestors().containsKey(requirement)) {
-            return getRequirementAncestors().get(requirement);
-        } else {
-            return NO_REQUIREMENTS;
-        }
+        List<Requirement> ancestors = getRequirementAncestors().get(requirement);
+        return (ancestors != null) ? ancestors : NO_REQUIREMENTS;
     }
 
     private List<Requirement> requirementsCalled(List<String> fieldValueList) {
@@ -250,57 +820,229 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
         for(int level = 0; level < fieldValueList.size(); level++) {
             String optionValue = fieldValueList.get(level);
             matchingRequirements.add(Requirement.named(optionValue)
-                                                .withType(requirementType(level))
+                                                .withType(requirementConverter.requirementType(level))
                                                 .withNarrative(optionValue).withParent(parentRequirement));
             parentRequirement = optionValue;
         }
         return matchingRequirements;
     }
 
-    private boolean noSuchIssue(JSONException e) {
-        return e.getMessage().contains("error 400");
-    }
-
     @Override
     public Optional<Requirement> getRequirementFor(TestTag testTag) {
-        for (Requirement requirement : getFlattenedRequirements()) {
-            if (requirement.getType().equals(testTag.getType()) && requirement.getName().equals(testTag.getShortName())) {
-                return Optional.of(requirement);
-            }
+        return getRequirementIndex().findByTypeAndName(testTag.getType(), testTag.getShortName());
+    }
+
+    /**
+     * Load all of the issues referenced by these test outcomes in a few batched JQL queries,
+     * so that tagging the outcomes afterwards does not need to go back to JIRA.
+     */
+    public void prefetchIssues(Collection<TestOutcome> testOutcomes) {
+        Set<String> issueKeys = Sets.newLinkedHashSet();
+        for(TestOutcome testOutcome : testOutcomes) {
+            issueKeys.addAll(testOutcome.getIssueKeys());
         }
-        return Optional.absent();
+        issueCache.prefetch(issueKeys, prefetchBatchSize);
     }
 
     @Override
     public Set<TestTag> getTagsFor(TestOutcome testOutcome) {
-        List<String> issues  = testOutcome.getIssueKeys();
-        Set<TestTag> tags = Sets.newHashSet();
-        for(String issue : issues) {
-            tags.addAll(tagsFromIssue(issue));
+        long start = System.nanoTime();
+        try {
+            List<String> issues  = testOutcome.getIssueKeys();
+            if (issues.size() == 1) {
+                return tagsFromIssue(issues.get(0));
+            }
+            Optional<Set<TestTag>> knownTags = knownTagsFromIssues(issues);
+            if (knownTags.isPresent()) {
+                return knownTags.get();
+            }
+            try {
+                return tagsFromIssues(issues, lookupExecutor).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Throwables.propagate(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        } finally {
+            metrics.recordTime("provider.getTagsFor", System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Tag a test outcome without blocking the calling thread. The returned future completes when the tags
+     * of all of its issues are known, or fails if any of the lookups fails.
+     *
+     * Only the JIRA requests hold a thread, one of the 'thucydides.jira.async.lookups' lookup threads, which
+     * also bounds how many of them run at a time. Outcomes whose issues are already being read or tagged
+     * share the futures of those lookups rather than waiting for them on a thread of their own.
+     */
+    public ListenableFuture<Set<TestTag>> getTagsForAsync(TestOutcome testOutcome) {
+        List<ListenableFuture<ImmutableSet<TestTag>>> issueTags = Lists.newArrayList();
+        for(String issueKey : testOutcome.getIssueKeys()) {
+            issueTags.add(tagsFromIssueAsync(issueKey));
         }
-        return ImmutableSet.copyOf(tags);
+        return unionOf(issueTags);
     }
 
-    private Collection<TestTag> tagsFromIssue(String issueKey) {
+    private ListenableFuture<Set<TestTag>> tagsFromIssues(List<String> issueKeys, ListeningExecutorService executor) {
+        List<ListenableFuture<ImmutableSet<TestTag>>> issueTags = Lists.newArrayList();
+        for(final String issueKey : issueKeys) {
+            issueTags.add(executor.submit(new Callable<ImmutableSet<TestTag>>() {
+                @Override
+                public ImmutableSet<TestTag> call() {
+                    return tagsFromIssue(issueKey);
+                }
+            }));
+        }
+        return unionOf(issueTags);
+    }
 
-        List<TestTag> matchingTags = getRequirementsTags(issueKey);
+    private static ListenableFuture<Set<TestTag>> unionOf(List<ListenableFuture<ImmutableSet<TestTag>>> issueTags) {
+        return Futures.transform(Futures.<Set<TestTag>>allAsList(issueTags),
+                                 new Function<List<Set<TestTag>>, Set<TestTag>>() {
+                                     @Override
+                                     public Set<TestTag> apply(List<Set<TestTag>> tagsOfEachIssue) {
+                                         ImmutableSet.Builder<TestTag> tags = ImmutableSet.builder();
+                                         for(Set<TestTag> issueTags : tagsOfEachIssue) {
+                                             tags.addAll(issueTags);
+                                         }
+                                         return tags.build();
+                                     }
+                                 });
+    }
 
-        Optional<IssueSummary> issue = Optional.absent();
+    /**
+     * When the tags of every issue of an outcome are already known, their union is built on the calling thread,
+     * without submitting lookups.
+     */
+    private Optional<Set<TestTag>> knownTagsFromIssues(List<String> issueKeys) {
+        Cache<String, ImmutableSet<TestTag>> tagsOfIssues = state.issueTags;
+        ImmutableSet.Builder<TestTag> tags = ImmutableSet.builder();
+        for(String issueKey : issueKeys) {
+            ImmutableSet<TestTag> issueTags = tagsOfIssues.getIfPresent(issueKey);
+            if (issueTags == null) {
+                return Optional.absent();
+            }
+            tags.addAll(issueTags);
+        }
+        return Optional.<Set<TestTag>>of(tags.build());
+    }
+
+    /**
+     * The tags of an issue are built once, and then reused without going back to the issue cache.
+     * Issues JIRA does not know about are not remembered here, so the missing issue time-to-live still applies.
+     * The tag cache is read before the requirements tree, so tags built from a tree replaced by a refresh
+     * can only end up in the cache that the refresh discarded. The same goes for the tags built from an empty tree
+     * before the requirements could be read.
+     *
+     * Outcomes of a popular issue are often tagged at the same time on several threads. The first of them
+     * builds the tags of the issue, and the others wait for its result instead of building them too.
+     */
+    private ImmutableSet<TestTag> tagsFromIssue(String issueKey) {
+        Cache<String, ImmutableSet<TestTag>> tagsOfIssues = state.issueTags;
+        ImmutableSet<TestTag> tags = tagsOfIssues.getIfPresent(issueKey);
+        if (tags != null) {
+            return tags;
+        }
+        SettableFuture<ImmutableSet<TestTag>> builtTags = SettableFuture.create();
+        ListenableFuture<ImmutableSet<TestTag>> tagsInFlight = state.tagsInFlight.putIfAbsent(issueKey, builtTags);
+        if (tagsInFlight != null) {
+            return waitFor(tagsInFlight);
+        }
         try {
-            issue = jiraClient.findByKey(issueKey);
-        } catch (JSONException e) {
-            logger.error("Could not load issue: " + issueKey, e);
-        }
-        if (issue.isPresent()) {
-            matchingTags.addAll(getCustomVersionTags(issue.get()));
-            matchingTags.add(TestTag.withName(issue.get().getSummary()).andType(issue.get().getType()));
-            if (releaseProviderActive) {
-                matchingTags.addAll(getCustomVersionTags(issue.get()));
-            } else {
-                matchingTags.addAll(versionTagsFrom(issue.get().getFixVersions()));
+            tags = buildTagsOfIssue(issueKey, tagsOfIssues);
+            builtTags.set(tags);
+            return tags;
+        } catch (Throwable e) {
+            builtTags.setException(e);
+            throw Throwables.propagate(e);
+        } finally {
+            state.tagsInFlight.remove(issueKey, builtTags);
+        }
+    }
+
+    private ImmutableSet<TestTag> buildTagsOfIssue(String issueKey, Cache<String, ImmutableSet<TestTag>> tagsOfIssues) {
+        ImmutableSet<TestTag> tags = tagsOfIssues.getIfPresent(issueKey);
+        if (tags != null) {
+            return tags;
+        }
+        return tagsOfLoadedIssue(issueKey, loadIssue(issueKey), tagsOfIssues);
+    }
+
+    private ImmutableSet<TestTag> tagsOfLoadedIssue(String issueKey,
+                                                    Optional<IssueSummary> issue,
+                                                    Cache<String, ImmutableSet<TestTag>> tagsOfIssues) {
+        if (!issue.isPresent()) {
+            return ImmutableSet.of();
+        }
+        ImmutableSet<TestTag> tags = buildTagsOf(issue.get());
+        tagsOfIssues.put(issueKey, tags);
+        return tags;
+    }
+
+    /**
+     * The same as {@link #tagsFromIssue}, except that nothing waits on a thread: the tags are built on the thread
+     * that read the issue, and callers asking for tags that are already being built get the same future.
+     */
+    private ListenableFuture<ImmutableSet<TestTag>> tagsFromIssueAsync(final String issueKey) {
+        final Cache<String, ImmutableSet<TestTag>> tagsOfIssues = state.issueTags;
+        ImmutableSet<TestTag> tags = tagsOfIssues.getIfPresent(issueKey);
+        if (tags != null) {
+            return Futures.immediateFuture(tags);
+        }
+        final SettableFuture<ImmutableSet<TestTag>> builtTags = SettableFuture.create();
+        ListenableFuture<ImmutableSet<TestTag>> tagsInFlight = state.tagsInFlight.putIfAbsent(issueKey, builtTags);
+        if (tagsInFlight != null) {
+            return tagsInFlight;
+        }
+        ListenableFuture<ImmutableSet<TestTag>> tagsOfIssue
+                = Futures.transform(loadIssueAsync(issueKey),
+                                    new Function<Optional<IssueSummary>, ImmutableSet<TestTag>>() {
+                                        @Override
+                                        public ImmutableSet<TestTag> apply(Optional<IssueSummary> issue) {
+                                            return tagsOfLoadedIssue(issueKey, issue, tagsOfIssues);
+                                        }
+                                    });
+        Futures.addCallback(tagsOfIssue, new FutureCallback<ImmutableSet<TestTag>>() {
+            @Override
+            public void onSuccess(ImmutableSet<TestTag> tags) {
+                state.tagsInFlight.remove(issueKey, builtTags);
+                builtTags.set(tags);
             }
+
+            @Override
+            public void onFailure(Throwable e) {
+                state.tagsInFlight.remove(issueKey, builtTags);
+                builtTags.setException(e);
+            }
+        });
+        return builtTags;
+    }
+
+    private ImmutableSet<TestTag> waitFor(ListenableFuture<ImmutableSet<TestTag>> tagsInFlight) {
+        try {
+            return Uninterruptibles.getUninterruptibly(tagsInFlight);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
         }
-        return matchingTags;
+    }
+
+    /**
+     * Each field is read once: the release field is only read when releases come from custom fields,
+     * and the fix versions only when they do not.
+     */
+    private ImmutableSet<TestTag> buildTagsOf(IssueSummary issue) {
+        ImmutableSet.Builder<TestTag> tags = ImmutableSet.builder();
+        tags.addAll(getRequirementsTags(issue));
+        if (releaseProviderActive) {
+            tags.addAll(getCustomVersionTags(issue));
+        }
+        tags.add(TestTag.withName(issue.getSummary()).andType(issue.getType()));
+        if (!releaseProviderActive) {
+            tags.addAll(versionTagsFrom(issue.getFixVersions()));
+        }
+        return tags.build();
     }
 
     private List<TestTag> versionTagsFrom(List<String> versions) {
@@ -315,8 +1057,9 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
     private List<TestTag> getCustomVersionTags(IssueSummary issue) {
         List<TestTag> versionTags = Lists.newArrayList();
 
-        if (issue.customField(releaseField).isPresent()) {
-            List<String> versions = issue.customField(releaseField).get().asListOf(STRINGS);
+        Optional<CustomFieldCast> releaseValue = issue.customField(releaseField);
+        if (releaseValue.isPresent()) {
+            List<String> versions = releaseValue.get().asListOf(STRINGS);
             for(String version : versions) {
                 versionTags.add(TestTag.withName(version).andType("version"));
             }
@@ -324,9 +1067,9 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
         return versionTags;
     }
 
-    private List<TestTag> getRequirementsTags(String issueKey) {
+    private List<TestTag> getRequirementsTags(IssueSummary issue) {
         List<TestTag> matchingTags = Lists.newArrayList();
-        Optional<Requirement> parentRequirement = getParentRequirementByIssueKey(issueKey);
+        Optional<Requirement> parentRequirement = getParentRequirementOf(issue);
         if (parentRequirement.isPresent()) {
             List<Requirement> associatedRequirements = Lists.newArrayList(parentRequirement.get());
             associatedRequirements.addAll(parentsOf(parentRequirement.get()));
@@ -348,18 +1091,5 @@ public class JIRACustomFieldsRequirementsProvider implements RequirementsTagProv
         };
     }
 
-    private List<Requirement> getFlattenedRequirements(){
-        return getFlattenedRequirements(getRequirements());
-    }
-
-    private List<Requirement> getFlattenedRequirements(List<Requirement> someRequirements){
-        List<Requirement> flattenedRequirements = Lists.newArrayList();
-        for (Requirement requirement : someRequirements) {
-            flattenedRequirements.add(requirement);
-            flattenedRequirements.addAll(getFlattenedRequirements(requirement.getChildren()));
-        }
-        return flattenedRequirements;
-    }
-
 
 }
@@ -0,0 +1,36 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import net.thucydides.plugins.jira.client.JerseyJiraClient;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONException;
+
+import java.util.List;
+
+/**
+ * Reads issues and cascading select options from a JIRA server using the JIRA REST client.
+ */
+public class JerseyIssueSource implements IssueSource {
+
+    private final JerseyJiraClient jiraClient;
+
+    public JerseyIssueSource(JerseyJiraClient jiraClient) {
+        this.jiraClient = jiraClient;
+    }
+
+    @Override
+    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+        return jiraClient.findByKey(key);
+    }
+
+    @Override
+    public List<IssueSummary> findByJQL(String query) throws JSONException {
+        return jiraClient.findByJQL(query);
+    }
+
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        return jiraClient.findOptionsForCascadingSelect(fieldName);
+    }
+}
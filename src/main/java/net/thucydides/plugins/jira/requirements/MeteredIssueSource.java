@@ -0,0 +1,75 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times each call made to an issue source, and counts the ones that fail.
+ * Metrics are named after the call, e.g. 'jira.findByKey' and 'jira.findByKey.errors'.
+ */
+public class MeteredIssueSource extends ForwardingIssueSource {
+
+    private final IssueSource issueSource;
+    private final MetricsRecorder metrics;
+
+    public MeteredIssueSource(IssueSource issueSource, MetricsRecorder metrics) {
+        this.issueSource = issueSource;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected IssueSource delegate() {
+        return issueSource;
+    }
+
+    @Override
+    public Optional<IssueSummary> findByKey(String key) throws JSONException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Optional<IssueSummary> issue = issueSource.findByKey(key);
+            failed = false;
+            return issue;
+        } finally {
+            recordCall("jira.findByKey", start, failed);
+        }
+    }
+
+    @Override
+    public List<IssueSummary> findByJQL(String query) throws JSONException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<IssueSummary> issues = issueSource.findByJQL(query);
+            failed = false;
+            return issues;
+        } finally {
+            recordCall("jira.findByJQL", start, failed);
+        }
+    }
+
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<CascadingSelectOption> options = issueSource.findOptionsForCascadingSelect(fieldName);
+            failed = false;
+            return options;
+        } finally {
+            recordCall("jira.findOptionsForCascadingSelect", start, failed);
+        }
+    }
+
+    private void recordCall(String name, long start, boolean failed) {
+        metrics.recordTime(name, System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (failed) {
+            metrics.increment(name + ".errors");
+        }
+    }
+}
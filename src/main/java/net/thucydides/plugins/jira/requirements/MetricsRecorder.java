@@ -0,0 +1,17 @@
+package net.thucydides.plugins.jira.requirements;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the measurements made by the requirements provider: how long calls take, how often things happen,
+ * and the current value of sizes and ratios. Implementations can pass them on to any metrics registry;
+ * {@link InMemoryMetricsRecorder} keeps them in memory and can summarize them at the end of a run.
+ */
+public interface MetricsRecorder {
+
+    void recordTime(String name, long duration, TimeUnit unit);
+
+    void increment(String name);
+
+    void gauge(String name, double value);
+}
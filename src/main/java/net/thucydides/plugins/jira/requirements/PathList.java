@@ -0,0 +1,49 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractList;
+
+/**
+ * An immutable list made of a shorter path plus one more element. Paths through a tree built this way share
+ * their common prefixes, so recording the path to each node costs one small object instead of a copy of the
+ * parent's path. Reading an element walks back from the end of the list, which is cheap for shallow trees.
+ */
+class PathList<T> extends AbstractList<T> {
+
+    private static final PathList<Object> EMPTY = new PathList<Object>(null, null, 0);
+
+    private final PathList<T> prefix;
+    private final T last;
+    private final int size;
+
+    private PathList(PathList<T> prefix, T last, int size) {
+        this.prefix = prefix;
+        this.last = last;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PathList<T> empty() {
+        return (PathList<T>) EMPTY;
+    }
+
+    public PathList<T> with(T element) {
+        return new PathList<T>(this, element, size + 1);
+    }
+
+    @Override
+    public T get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        PathList<T> path = this;
+        for(int position = size - 1; position > index; position--) {
+            path = path.prefix;
+        }
+        return path.last;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,46 @@
+package net.thucydides.plugins.jira.requirements;
+
+import net.thucydides.plugins.jira.client.JerseyJiraClient;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+
+import javax.ws.rs.client.Client;
+import java.util.List;
+
+/**
+ * A JIRA client that sends all of its requests through a single REST client, where the plugin's client builds
+ * a new one for each request. Connections to JIRA are then kept alive and reused from one request to the next,
+ * up to the number of connections per host that the JVM keeps open ('http.maxConnections').
+ * JIRA can also be asked for gzip-compressed responses.
+ */
+class PooledJerseyJiraClient extends JerseyJiraClient {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final boolean compressedResponses;
+    private volatile Client restClient;
+
+    PooledJerseyJiraClient(String url, String username, String password, String project,
+                           String metadataIssueType, List<String> customFields, boolean compressedResponses) {
+        super(url, username, password, DEFAULT_BATCH_SIZE, project, metadataIssueType, customFields);
+        this.compressedResponses = compressedResponses;
+    }
+
+    @Override
+    public Client restClient() {
+        Client client = restClient;
+        if (client == null) {
+            synchronized (this) {
+                client = restClient;
+                if (client == null) {
+                    client = super.restClient();
+                    if (compressedResponses) {
+                        client.register(GZipEncoder.class).register(EncodingFilter.class);
+                    }
+                    restClient = client;
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,140 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.thucydides.core.model.TestTag;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What a provider loads and caches: the requirement and release trees, the issues and the tags of each issue,
+ * along with the lookup threads and the metrics recorder. The tags being built are kept until they are ready,
+ * so that other threads can wait for them.
+ *
+ * Providers created with the same JIRA configuration share one state, so the trees are only loaded once
+ * however many providers the framework creates. The registry only holds shared states weakly, and so do
+ * the scheduled refreshes and the metrics summary, so a state goes away with the last provider using it.
+ * Its lookup threads stop when they have been idle for a while.
+ */
+class ProviderState {
+
+    private static final Cache<List<?>, ProviderState> SHARED_STATES = CacheBuilder.newBuilder()
+                                                                                    .weakValues()
+                                                                                    .build();
+
+    private static final Cache<ProviderState, Boolean> SUMMARIZED_STATES = CacheBuilder.newBuilder()
+                                                                                       .weakKeys()
+                                                                                       .build();
+
+    private static final AtomicBoolean SUMMARY_HOOK_ADDED = new AtomicBoolean();
+
+    final IssueCache issueCache;
+    final Optional<SnapshotIssueSource> snapshots;
+    final int issueCacheSize;
+    final long issueTimeToLive;
+    final ListeningExecutorService lookupExecutor;
+    final ListeningExecutorService asyncLookupExecutor;
+    final MetricsRecorder metrics;
+
+    final Object requirementsLock = new Object();
+    final Object releasesLock = new Object();
+
+    volatile RequirementIndex requirementIndex = null;
+    volatile ReleaseIndex releaseIndex = null;
+    volatile long requirementsReadAt;
+    volatile long releasesReadAt;
+    volatile Cache<String, ImmutableSet<TestTag>> issueTags;
+    final ConcurrentMap<String, ListenableFuture<ImmutableSet<TestTag>>> tagsInFlight = Maps.newConcurrentMap();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    ProviderState(IssueCache issueCache,
+                  Optional<SnapshotIssueSource> snapshots,
+                  int issueCacheSize,
+                  long issueTimeToLive,
+                  ListeningExecutorService lookupExecutor,
+                  ListeningExecutorService asyncLookupExecutor,
+                  MetricsRecorder metrics) {
+        this.issueCache = issueCache;
+        this.snapshots = snapshots;
+        this.issueCacheSize = issueCacheSize;
+        this.issueTimeToLive = issueTimeToLive;
+        this.lookupExecutor = lookupExecutor;
+        this.asyncLookupExecutor = asyncLookupExecutor;
+        this.metrics = metrics;
+        this.issueTags = newIssueTagCache();
+    }
+
+    /**
+     * The state shared by the providers with this configuration, created by the first of them.
+     * Concurrent callers with the same configuration wait for that state rather than creating their own.
+     */
+    static ProviderState sharedBy(List<?> configuration, Callable<ProviderState> newState) {
+        try {
+            return SHARED_STATES.get(configuration, newState);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * The tags of up to as many issues as the issue cache holds, by issue key, kept no longer than the issues.
+     */
+    Cache<String, ImmutableSet<TestTag>> newIssueTagCache() {
+        return IssueCache.expiringAfter(issueTimeToLive, CacheBuilder.newBuilder())
+                         .maximumSize(issueCacheSize)
+                         .recordStats()
+                         .build();
+    }
+
+    /**
+     * Bring the issue cache gauges of the metrics up to date.
+     */
+    void updateCacheGauges() {
+        metrics.gauge("issues.cache.hitRate", issueCache.stats().hitRate());
+        metrics.gauge("issues.cache.evictions", issueCache.stats().evictionCount());
+        metrics.gauge("issues.missing.hitRate", issueCache.missingIssueStats().hitRate());
+        metrics.gauge("issues.tags.hitRate", issueTags.stats().hitRate());
+    }
+
+    /**
+     * Log the metrics of this state when the JVM shuts down, if the state is still in use by then.
+     * A single hook logs the metrics of all of the states that asked for it, and only holds them weakly.
+     */
+    void logMetricsSummaryOnShutdown() {
+        SUMMARIZED_STATES.put(this, Boolean.TRUE);
+        if (SUMMARY_HOOK_ADDED.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread("jira-metrics-summary") {
+                @Override
+                public void run() {
+                    for(ProviderState state : SUMMARIZED_STATES.asMap().keySet()) {
+                        state.updateCacheGauges();
+                        LoggerFactory.getLogger(JIRACustomFieldsRequirementsProvider.class)
+                                     .info("JIRA requirements provider metrics:\n{}", state.metrics);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * True for the first provider to use this state, which starts the background work configured for it.
+     */
+    boolean start() {
+        return started.compareAndSet(false, true);
+    }
+}
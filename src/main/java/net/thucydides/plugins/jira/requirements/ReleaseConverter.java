@@ -6,46 +6,81 @@ import net.thucydides.core.model.Release;
 import net.thucydides.core.reports.html.ReportNameProvider;
 import net.thucydides.plugins.jira.model.CascadingSelectOption;
 
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 
+/**
+ * Converts the options of a cascading select field into releases, walking them like {@link TreeIndex} walks a tree.
+ * Sibling releases share one immutable list of parents, which releases keep as it is instead of copying it.
+ */
 public class ReleaseConverter {
 
+    private final ReportNameProvider reportNameProvider = new ReportNameProvider();
+
     public List<Release> convertToReleases(List<CascadingSelectOption> releaseOptions) {
-        List<Release> releases = Lists.newArrayList();
+        List<Release> releases = Lists.newArrayListWithCapacity(releaseOptions.size());
+        Deque<PendingRelease> pendingReleases = new ArrayDeque<PendingRelease>();
         for(CascadingSelectOption option : releaseOptions) {
-            String releaseName = option.getOption();
-            Release release = Release.ofVersion(releaseName)
-                                     .withReport(getReportNameProvider().forRelease(releaseName));
-            List<Release> children = convertToReleases(option.getNestedOptions(), ImmutableList.of(release));
-            releases.add(release.withChildren(children));
+            pendingReleases.push(new PendingRelease(option, release(option), releases));
+            while (!pendingReleases.isEmpty()) {
+                PendingRelease pendingRelease = pendingReleases.peek();
+                if (pendingRelease.remainingOptions.hasNext()) {
+                    CascadingSelectOption childOption = pendingRelease.remainingOptions.next();
+                    Release childRelease = release(childOption).withParents(pendingRelease.childParents());
+                    pendingReleases.push(new PendingRelease(childOption, childRelease, pendingRelease));
+                } else {
+                    pendingReleases.pop();
+                    pendingRelease.siblings.add(pendingRelease.release.withChildren(pendingRelease.children));
+                }
+            }
         }
         return releases;
     }
 
-    private List<Release> convertToReleases(List<CascadingSelectOption> releaseOptions, List<Release> parents) {
-        List<Release> releases = Lists.newArrayList();
-        for(CascadingSelectOption option : releaseOptions) {
-            String releaseName = option.getOption();
-            Release childRelease = Release.ofVersion(releaseName)
-                                          .withReport(getReportNameProvider().forRelease(releaseName))
-                                          .withParents(parents);
-
-            List<Release> parentReleases = concat(parents, childRelease);
-            List<Release> children = convertToReleases(option.getNestedOptions(), parentReleases);
-            releases.add(childRelease.withChildren(children));
-        }
-        return releases;
+    private Release release(CascadingSelectOption option) {
+        return Release.ofVersion(option.getOption()).withReport(reportNameProvider.forRelease(option.getOption()));
     }
 
-    private List<Release> concat(List<Release> parents, Release childRelease) {
-        List<Release> parentsAndChild = Lists.newArrayList(parents);
-        parentsAndChild.add(childRelease);
-        return parentsAndChild;
-    }
+    /**
+     * A release whose children are still being converted. The parents recorded in each child are the release
+     * before its children were added, as the completed release only exists once all of its children do.
+     */
+    private static class PendingRelease {
+        private final Release release;
+        private final Iterator<CascadingSelectOption> remainingOptions;
+        private final List<Release> children;
+        private final List<Release> siblings;
+        private final List<Release> parents;
+        private ImmutableList<Release> childParents;
+
+        private PendingRelease(CascadingSelectOption option, Release release, List<Release> siblings) {
+            this(option, release, siblings, ImmutableList.<Release>of());
+        }
+
+        private PendingRelease(CascadingSelectOption option, Release release, PendingRelease parent) {
+            this(option, release, parent.children, parent.childParents());
+        }
 
-    private ReportNameProvider getReportNameProvider() {
-        return new ReportNameProvider();
+        private PendingRelease(CascadingSelectOption option, Release release, List<Release> siblings,
+                               List<Release> parents) {
+            this.release = release;
+            this.remainingOptions = option.getNestedOptions().iterator();
+            this.children = Lists.newArrayListWithCapacity(option.getNestedOptions().size());
+            this.siblings = siblings;
+            this.parents = parents;
+        }
+
+        /**
+         * Only built for releases that have children, and then only once for all of them.
+         */
+        private ImmutableList<Release> childParents() {
+            if (childParents == null) {
+                childParents = ImmutableList.<Release>builder().addAll(parents).add(release).build();
+            }
+            return childParents;
+        }
     }
 }
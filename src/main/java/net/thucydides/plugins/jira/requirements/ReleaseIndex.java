@@ -0,0 +1,98 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import net.thucydides.core.model.Release;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup structures for a release tree, built once when the releases are loaded from JIRA and never changed
+ * afterwards, so an index can be safely shared between threads.
+ *
+ * The parents a release records are copies made before their own children were added. The index returns
+ * the releases of the tree instead, so the parents of a release have their children too. Releases are equal
+ * when their names are, so the parents are looked up by identity.
+ */
+public class ReleaseIndex {
+
+    private static final Function<Release, List<Release>> CHILDREN = new Function<Release, List<Release>>() {
+        @Override
+        public List<Release> apply(Release release) {
+            return release.getChildren();
+        }
+    };
+
+    private static final Function<Release, String> NAME = new Function<Release, String>() {
+        @Override
+        public String apply(Release release) {
+            return release.getName();
+        }
+    };
+
+    private final List<Release> releases;
+    private final TreeIndex<Release> tree;
+    private final Map<String, Release> releasesByName;
+    private final Map<Release, List<Release>> releaseParents;
+
+    private ReleaseIndex(List<Release> releases) {
+        this.releases = releases;
+        this.tree = TreeIndex.of(releases, CHILDREN, NAME);
+        this.releasesByName = indexByName(tree.getFlattenedNodes());
+        this.releaseParents = Collections.unmodifiableMap(
+                tree.putParentsInto(new IdentityHashMap<Release, List<Release>>()));
+    }
+
+    public static ReleaseIndex of(List<Release> releases) {
+        return new ReleaseIndex(releases);
+    }
+
+    public List<Release> getReleases() {
+        return releases;
+    }
+
+    /**
+     * All of the releases in the tree, each parent being followed by its children.
+     */
+    public List<Release> getFlattenedReleases() {
+        return tree.getFlattenedNodes();
+    }
+
+    /**
+     * The first release in the flattened tree with a given name, such as the name of a version tag.
+     */
+    public Optional<Release> findByName(String name) {
+        return Optional.fromNullable(releasesByName.get(name));
+    }
+
+    /**
+     * The release at the end of a path of release names, such as the values of the release field of an issue,
+     * starting from a top-level release.
+     */
+    public Optional<Release> findByPath(List<String> names) {
+        return tree.findByPath(names);
+    }
+
+    /**
+     * The releases above a release of this index, starting from the top-level release.
+     * Releases that are not part of this index have no parents.
+     */
+    public List<Release> getParentsOf(Release release) {
+        List<Release> parents = releaseParents.get(release);
+        return (parents == null) ? Collections.<Release>emptyList() : parents;
+    }
+
+    private static Map<String, Release> indexByName(List<Release> releases) {
+        Map<String, Release> releasesByName = Maps.newHashMapWithExpectedSize(releases.size());
+        for(Release release : releases) {
+            if (!releasesByName.containsKey(release.getName())) {
+                releasesByName.put(release.getName(), release);
+            }
+        }
+        return Collections.unmodifiableMap(releasesByName);
+    }
+}
@@ -0,0 +1,156 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.thucydides.core.requirements.model.Requirement;
+import net.thucydides.core.requirements.model.RequirementBuilderNameStep;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the options of a cascading select field into a requirements tree. Each nesting level of the
+ * field gets the next requirement type, and the last type is used for any deeper levels.
+ *
+ * The options are walked like {@link TreeIndex} walks a tree. Each requirement is built once, after all of its
+ * children, in a list sized for them.
+ */
+public class RequirementConverter {
+
+    private final List<String> requirementTypes;
+
+    public RequirementConverter(List<String> requirementTypes) {
+        this.requirementTypes = ImmutableList.copyOf(requirementTypes);
+    }
+
+    public List<Requirement> convertToRequirements(List<CascadingSelectOption> requirementsOptions) {
+        return convertToRequirements(requirementsOptions, Collections.<Requirement>emptyList());
+    }
+
+    /**
+     * Convert a new version of the options, reusing the requirements converted from a previous version
+     * wherever nothing has changed at or below them, so that unchanged requirements stay the same objects.
+     */
+    public List<Requirement> convertToRequirements(List<CascadingSelectOption> requirementsOptions,
+                                                   List<Requirement> previousRequirements) {
+        List<Requirement> requirements = Lists.newArrayListWithCapacity(requirementsOptions.size());
+        Map<String, Requirement> previousRequirementsByName = indexByName(previousRequirements);
+        Deque<PendingRequirement> pendingRequirements = new ArrayDeque<PendingRequirement>();
+        for(CascadingSelectOption option : requirementsOptions) {
+            pendingRequirements.push(new PendingRequirement(option, 0, null,
+                                                            previousRequirementsByName.remove(option.getOption()),
+                                                            requirements));
+            while (!pendingRequirements.isEmpty()) {
+                PendingRequirement pendingRequirement = pendingRequirements.peek();
+                if (pendingRequirement.remainingOptions.hasNext()) {
+                    CascadingSelectOption childOption = pendingRequirement.remainingOptions.next();
+                    pendingRequirements.push(new PendingRequirement(childOption,
+                                                                    pendingRequirement.level + 1,
+                                                                    pendingRequirement.name,
+                                                                    pendingRequirement.previousChildNamed(childOption.getOption()),
+                                                                    pendingRequirement.children));
+                } else {
+                    pendingRequirements.pop();
+                    pendingRequirement.siblings.add(requirementFor(pendingRequirement));
+                }
+            }
+        }
+        return requirements;
+    }
+
+    /**
+     * The parent is set before the requirement is built, rather than on a copy made afterwards.
+     * Top-level requirements have no parent.
+     */
+    private Requirement requirementFor(PendingRequirement pendingRequirement) {
+        if (unchanged(pendingRequirement.previousRequirement, pendingRequirement.level, pendingRequirement.children)) {
+            return pendingRequirement.previousRequirement;
+        }
+        RequirementBuilderNameStep requirement = Requirement.named(pendingRequirement.name);
+        if (pendingRequirement.level > 0) {
+            requirement.withOptionalParent(pendingRequirement.parentName);
+        }
+        return requirement.withType(requirementType(pendingRequirement.level))
+                          .withNarrative(pendingRequirement.name)
+                          .withChildren(pendingRequirement.children);
+    }
+
+    private static Map<String, Requirement> indexByName(List<Requirement> requirements) {
+        if (requirements.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Requirement> requirementsByName = Maps.newHashMapWithExpectedSize(requirements.size());
+        for(Requirement requirement : requirements) {
+            if (!requirementsByName.containsKey(requirement.getName())) {
+                requirementsByName.put(requirement.getName(), requirement);
+            }
+        }
+        return requirementsByName;
+    }
+
+    /**
+     * A previous requirement with the same name can be reused if its type is the same and its children
+     * were all reused, in the same order.
+     */
+    private boolean unchanged(Requirement previousRequirement, int requirementLevel, List<Requirement> children) {
+        if (previousRequirement == null || !previousRequirement.getType().equals(requirementType(requirementLevel))) {
+            return false;
+        }
+        List<Requirement> previousChildren = previousRequirement.getChildren();
+        if (previousChildren.size() != children.size()) {
+            return false;
+        }
+        for(int i = 0; i < children.size(); i++) {
+            if (children.get(i) != previousChildren.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String requirementType(int requirementLevel) {
+        return (requirementLevel < requirementTypes.size()) ? requirementTypes.get(requirementLevel) : requirementTypes.get(requirementTypes.size() - 1);
+    }
+
+    /**
+     * A requirement whose children are still being converted, along with the previous requirement of the same name,
+     * whose children are matched by name against the new children as they are converted.
+     */
+    private static class PendingRequirement {
+        private final String name;
+        private final int level;
+        private final String parentName;
+        private final Requirement previousRequirement;
+        private final Iterator<CascadingSelectOption> remainingOptions;
+        private final List<Requirement> children;
+        private final List<Requirement> siblings;
+        private Map<String, Requirement> previousChildrenByName;
+
+        private PendingRequirement(CascadingSelectOption option, int level, String parentName,
+                                   Requirement previousRequirement, List<Requirement> siblings) {
+            this.name = option.getOption();
+            this.level = level;
+            this.parentName = parentName;
+            this.previousRequirement = previousRequirement;
+            this.remainingOptions = option.getNestedOptions().iterator();
+            this.children = Lists.newArrayListWithCapacity(option.getNestedOptions().size());
+            this.siblings = siblings;
+        }
+
+        private Requirement previousChildNamed(String childName) {
+            if (previousRequirement == null) {
+                return null;
+            }
+            if (previousChildrenByName == null) {
+                previousChildrenByName = indexByName(previousRequirement.getChildren());
+            }
+            return previousChildrenByName.remove(childName);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+import net.thucydides.core.requirements.model.Requirement;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup structures for a requirements tree. They are built once, when the tree is loaded from JIRA,
+ * and never change afterwards, so an index can be safely shared between threads.
+ */
+public class RequirementIndex {
+
+    private static final Function<Requirement, List<Requirement>> CHILDREN
+            = new Function<Requirement, List<Requirement>>() {
+                  @Override
+                  public List<Requirement> apply(Requirement requirement) {
+                      return requirement.getChildren();
+                  }
+              };
+
+    private static final Function<Requirement, String> NAME = new Function<Requirement, String>() {
+        @Override
+        public String apply(Requirement requirement) {
+            return requirement.getName();
+        }
+    };
+
+    private final List<Requirement> requirements;
+    private final List<Requirement> flattenedRequirements;
+    private final Table<String, String, Requirement> requirementsByTypeAndName;
+    private final Map<Requirement, List<Requirement>> requirementAncestors;
+    private final Map<String, TreeIndex<Requirement>> subtreesByName;
+    private final Map<Requirement, TreeIndex<Requirement>> subtrees;
+
+    /**
+     * Only the first of several top-level requirements with the same name is part of the paths.
+     */
+    private RequirementIndex(List<Requirement> requirements, Map<Requirement, TreeIndex<Requirement>> previousSubtrees) {
+        this.requirements = requirements;
+        this.subtrees = subtreesOf(requirements, previousSubtrees);
+
+        ImmutableList.Builder<Requirement> flattenedRequirements = ImmutableList.builder();
+        Map<Requirement, List<Requirement>> requirementAncestors = Maps.newHashMap();
+        Map<String, TreeIndex<Requirement>> subtreesByName = Maps.newHashMapWithExpectedSize(requirements.size());
+        for(Requirement requirement : requirements) {
+            TreeIndex<Requirement> subtree = subtrees.get(requirement);
+            flattenedRequirements.addAll(subtree.getFlattenedNodes());
+            subtree.putParentsInto(requirementAncestors);
+            if (!subtreesByName.containsKey(requirement.getName())) {
+                subtreesByName.put(requirement.getName(), subtree);
+            }
+        }
+        this.flattenedRequirements = flattenedRequirements.build();
+        this.requirementsByTypeAndName = indexByTypeAndName(this.flattenedRequirements);
+        this.requirementAncestors = Collections.unmodifiableMap(requirementAncestors);
+        this.subtreesByName = subtreesByName;
+    }
+
+    public static RequirementIndex of(List<Requirement> requirements) {
+        return new RequirementIndex(requirements, Collections.<Requirement, TreeIndex<Requirement>>emptyMap());
+    }
+
+    /**
+     * An index for a refreshed requirements tree, reusing the structures built by a previous index
+     * for the top-level requirements the two trees have in common.
+     */
+    public static RequirementIndex of(List<Requirement> requirements, RequirementIndex previousIndex) {
+        return new RequirementIndex(requirements, previousIndex.subtrees);
+    }
+
+    public List<Requirement> getRequirements() {
+        return requirements;
+    }
+
+    /**
+     * All of the requirements in the tree, each parent being followed by its children.
+     */
+    public List<Requirement> getFlattenedRequirements() {
+        return flattenedRequirements;
+    }
+
+    /**
+     * The first requirement in the flattened tree with a given type and name.
+     */
+    public Optional<Requirement> findByTypeAndName(String type, String name) {
+        return Optional.fromNullable(requirementsByTypeAndName.get(type, name));
+    }
+
+    /**
+     * The ancestors of each requirement in the tree, starting from the top-level requirement.
+     */
+    public Map<Requirement, List<Requirement>> getRequirementAncestors() {
+        return requirementAncestors;
+    }
+
+    /**
+     * The requirement at the end of a path of requirement names, such as the values of a cascading select field,
+     * starting from a top-level requirement. This is the same instance as the one in the requirements tree.
+     */
+    public Optional<Requirement> findByPath(List<String> names) {
+        TreeIndex<Requirement> subtree = names.isEmpty() ? null : subtreesByName.get(names.get(0));
+        return (subtree == null) ? Optional.<Requirement>absent() : subtree.findByPath(names);
+    }
+
+    /**
+     * The structures are built for each top-level requirement separately, so that an index for a refreshed tree
+     * can reuse those of the top-level requirements that are still the same instances as in the previous index.
+     * Requirements are compared by identity, as equal requirements can still have different children.
+     */
+    private static Map<Requirement, TreeIndex<Requirement>> subtreesOf(
+            List<Requirement> requirements, Map<Requirement, TreeIndex<Requirement>> previousSubtrees) {
+        Map<Requirement, TreeIndex<Requirement>> subtrees
+                = new IdentityHashMap<Requirement, TreeIndex<Requirement>>(requirements.size());
+        for(Requirement requirement : requirements) {
+            TreeIndex<Requirement> subtree = previousSubtrees.get(requirement);
+            subtrees.put(requirement, (subtree != null) ? subtree
+                                                        : TreeIndex.of(ImmutableList.of(requirement), CHILDREN, NAME));
+        }
+        return subtrees;
+    }
+
+    private static Table<String, String, Requirement> indexByTypeAndName(List<Requirement> requirements) {
+        Table<String, String, Requirement> index = HashBasedTable.create();
+        for(Requirement requirement : requirements) {
+            if (!index.contains(requirement.getType(), requirement.getName())) {
+                index.put(requirement.getType(), requirement.getName(), requirement);
+            }
+        }
+        return ImmutableTable.copyOf(index);
+    }
+}
@@ -0,0 +1,61 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Reads cascading select options from a local snapshot if one was recorded recently enough,
+ * and from the underlying source otherwise, recording a new snapshot as it goes.
+ */
+class SnapshotIssueSource extends ForwardingIssueSource {
+
+    private final IssueSource issueSource;
+    private final File snapshotDirectory;
+    private final String snapshotSource;
+    private final long snapshotTimeToLive;
+
+    private final org.slf4j.Logger logger = LoggerFactory.getLogger(SnapshotIssueSource.class);
+
+    SnapshotIssueSource(IssueSource issueSource, File snapshotDirectory, String snapshotSource, long snapshotTimeToLive) {
+        this.issueSource = issueSource;
+        this.snapshotDirectory = snapshotDirectory;
+        this.snapshotSource = snapshotSource;
+        this.snapshotTimeToLive = snapshotTimeToLive;
+    }
+
+    @Override
+    protected IssueSource delegate() {
+        return issueSource;
+    }
+
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        CascadingSelectSnapshot snapshot = new CascadingSelectSnapshot(snapshotDirectory, snapshotSource,
+                                                                       fieldName, snapshotTimeToLive);
+        Optional<List<CascadingSelectOption>> snapshotOptions = snapshot.load();
+        if (snapshotOptions.isPresent()) {
+            logger.debug("Reading options for {} from {}", fieldName, snapshot.getSnapshotFile());
+            return snapshotOptions.get();
+        }
+        return readAndSave(fieldName, snapshot);
+    }
+
+    /**
+     * Read the options from the underlying source even if the snapshot is still fresh, as a refresh does,
+     * and record them as the new snapshot.
+     */
+    List<CascadingSelectOption> findOptionsForCascadingSelectIgnoringSnapshot(String fieldName) {
+        return readAndSave(fieldName, new CascadingSelectSnapshot(snapshotDirectory, snapshotSource,
+                                                                  fieldName, snapshotTimeToLive));
+    }
+
+    private List<CascadingSelectOption> readAndSave(String fieldName, CascadingSelectSnapshot snapshot) {
+        List<CascadingSelectOption> options = issueSource.findOptionsForCascadingSelect(fieldName);
+        snapshot.save(options);
+        return options;
+    }
+}
@@ -0,0 +1,191 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.RateLimiter;
+import net.thucydides.plugins.jira.domain.IssueSummary;
+import net.thucydides.plugins.jira.model.CascadingSelectOption;
+import org.json.JSONException;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the requests made to JIRA below the rate the server accepts, and retries the requests it throttles.
+ *
+ * The rate starts at the maximum rate, if there is one. Each throttled response (HTTP 429 or 503) halves it,
+ * and each successful one raises it again a little, by about a twentieth of the maximum rate every second, back up
+ * to the maximum rate. Servers usually count requests per second, so responses to the requests sent less than
+ * a second after the last decrease do not lower the rate any further, and a burst of throttled responses only
+ * halves it once. Without a maximum rate, requests are not limited.
+ *
+ * A throttled request is retried up to the maximum number of retries, after a random delay of up to
+ * the retry backoff doubled after each attempt, before its error is passed on to the caller.
+ * Metrics are named 'jira.throttled', 'jira.retries' and 'jira.rate'.
+ */
+public class ThrottledIssueSource extends ForwardingIssueSource {
+
+    private static final double INCREASE_PER_SECOND = 0.05;
+    private static final double MULTIPLICATIVE_DECREASE = 0.5;
+    private static final double MINIMUM_RATE = 1.0;
+    private static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final IssueSource issueSource;
+    private final Optional<RateLimiter> rateLimiter;
+    private final double maximumRate;
+    private final double minimumRate;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final MetricsRecorder metrics;
+
+    private double rate;
+    private long lastDecrease;
+
+    /**
+     * @param maximumRate the number of requests per second to send at most, or 0 for no limit
+     * @param retryBackoff the longest delay before the first retry, in milliseconds
+     */
+    public ThrottledIssueSource(IssueSource issueSource,
+                                double maximumRate,
+                                int maxRetries,
+                                long retryBackoff,
+                                MetricsRecorder metrics) {
+        this.issueSource = issueSource;
+        this.maximumRate = maximumRate;
+        this.minimumRate = Math.min(MINIMUM_RATE, maximumRate);
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.metrics = metrics;
+        this.rate = maximumRate;
+        this.lastDecrease = System.nanoTime() - DECREASE_INTERVAL;
+        this.rateLimiter = (maximumRate > 0) ? Optional.of(RateLimiter.create(maximumRate))
+                                             : Optional.<RateLimiter>absent();
+    }
+
+    @Override
+    protected IssueSource delegate() {
+        return issueSource;
+    }
+
+    @Override
+    public Optional<IssueSummary> findByKey(final String key) throws JSONException {
+        return withRetries(new JiraCall<Optional<IssueSummary>>() {
+            @Override
+            public Optional<IssueSummary> call() throws JSONException {
+                return issueSource.findByKey(key);
+            }
+        });
+    }
+
+    @Override
+    public List<IssueSummary> findByJQL(final String query) throws JSONException {
+        return withRetries(new JiraCall<List<IssueSummary>>() {
+            @Override
+            public List<IssueSummary> call() throws JSONException {
+                return issueSource.findByJQL(query);
+            }
+        });
+    }
+
+    /**
+     * Options that cannot be read come back as an empty list rather than an error, so they are not retried here;
+     * the provider reads them again the next time it needs them.
+     */
+    @Override
+    public List<CascadingSelectOption> findOptionsForCascadingSelect(String fieldName) {
+        acquirePermit();
+        return issueSource.findOptionsForCascadingSelect(fieldName);
+    }
+
+    /**
+     * The number of requests per second currently allowed, or 0 if requests are not limited.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private <T> T withRetries(JiraCall<T> call) throws JSONException {
+        for(int attempt = 0; ; attempt++) {
+            long start = acquirePermit();
+            try {
+                T result = call.call();
+                increaseRate();
+                return result;
+            } catch (JSONException e) {
+                if (!throttled(e)) {
+                    throw e;
+                }
+                metrics.increment("jira.throttled");
+                decreaseRate(start);
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                metrics.increment("jira.retries");
+                if (!backOff(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private long acquirePermit() {
+        if (rateLimiter.isPresent()) {
+            rateLimiter.get().acquire();
+        }
+        return System.nanoTime();
+    }
+
+    private boolean throttled(JSONException e) {
+        String message = e.getMessage();
+        return (message != null) && (message.contains("error 429") || message.contains("error 503"));
+    }
+
+    private void increaseRate() {
+        if (!rateLimiter.isPresent()) {
+            return;
+        }
+        synchronized (this) {
+            if (rate < maximumRate) {
+                rate = Math.min(maximumRate, rate + maximumRate * INCREASE_PER_SECOND / rate);
+                updateRate();
+            }
+        }
+    }
+
+    private void decreaseRate(long requestStart) {
+        if (!rateLimiter.isPresent()) {
+            return;
+        }
+        synchronized (this) {
+            if (requestStart - lastDecrease > DECREASE_INTERVAL && rate > minimumRate) {
+                rate = Math.max(minimumRate, rate * MULTIPLICATIVE_DECREASE);
+                lastDecrease = System.nanoTime();
+                updateRate();
+            }
+        }
+    }
+
+    private void updateRate() {
+        rateLimiter.get().setRate(rate);
+        metrics.gauge("jira.rate", rate);
+    }
+
+    /**
+     * Wait for a random time, so that the requests throttled together are not all retried together.
+     * Returns false if the thread was interrupted while waiting.
+     */
+    private boolean backOff(int attempt) {
+        long longestDelay = retryBackoff << Math.min(attempt, 20);
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(longestDelay + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private interface JiraCall<T> {
+        T call() throws JSONException;
+    }
+}
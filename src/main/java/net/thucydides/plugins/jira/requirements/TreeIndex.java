@@ -0,0 +1,127 @@
+package net.thucydides.plugins.jira.requirements;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lookup structures shared by the requirement and release indexes, for a tree given by its top-level nodes,
+ * a function returning the children of a node and a function returning its name: the flattened tree, the parents
+ * of each node and the nodes at the end of each path of names.
+ *
+ * Option trees in JIRA can be deeply nested, so the tree is walked once, with an explicit stack rather than
+ * by recursion, which could overflow the call stack. The parents of a node are a {@link PathList} that only adds
+ * one element to the parents of its own parent, and siblings share the same list, so recording them costs
+ * one small object per node with children rather than a copy per level. The converters that build the trees
+ * from the options walk them in the same way, for the same reason.
+ */
+class TreeIndex<T> {
+
+    private final List<T> flattenedNodes;
+    private final List<List<T>> parents;
+    private final Map<String, PathNode<T>> paths;
+
+    /**
+     * Only the first of several siblings with the same name is part of the paths, along with its descendants.
+     */
+    private TreeIndex(List<T> topLevelNodes, Function<T, List<T>> children, Function<T, String> name) {
+        ImmutableList.Builder<T> flattenedNodes = ImmutableList.builder();
+        ImmutableList.Builder<List<T>> parents = ImmutableList.builder();
+        Map<String, PathNode<T>> paths = Maps.newHashMapWithExpectedSize(topLevelNodes.size());
+
+        Deque<PendingChildren<T>> pendingChildren = new ArrayDeque<PendingChildren<T>>();
+        pendingChildren.push(new PendingChildren<T>(topLevelNodes, PathList.<T>empty(), paths));
+        while (!pendingChildren.isEmpty()) {
+            PendingChildren<T> siblings = pendingChildren.peek();
+            if (!siblings.remainingChildren.hasNext()) {
+                pendingChildren.pop();
+                continue;
+            }
+            T child = siblings.remainingChildren.next();
+            List<T> childrenOfChild = children.apply(child);
+            flattenedNodes.add(child);
+            parents.add(siblings.parents);
+            Map<String, PathNode<T>> childPaths = null;
+            if (siblings.paths != null && !siblings.paths.containsKey(name.apply(child))) {
+                childPaths = Maps.newHashMapWithExpectedSize(childrenOfChild.size());
+                siblings.paths.put(name.apply(child), new PathNode<T>(child, childPaths));
+            }
+            if (!childrenOfChild.isEmpty()) {
+                pendingChildren.push(new PendingChildren<T>(childrenOfChild, siblings.parents.with(child), childPaths));
+            }
+        }
+        this.flattenedNodes = flattenedNodes.build();
+        this.parents = parents.build();
+        this.paths = paths;
+    }
+
+    static <T> TreeIndex<T> of(List<T> topLevelNodes, Function<T, List<T>> children, Function<T, String> name) {
+        return new TreeIndex<T>(topLevelNodes, children, name);
+    }
+
+    /**
+     * All of the nodes in the tree, each parent being followed by its children.
+     */
+    List<T> getFlattenedNodes() {
+        return flattenedNodes;
+    }
+
+    /**
+     * Add the parents of each node, starting from its top-level node, to a map, in the order of the flattened tree.
+     */
+    <M extends Map<T, List<T>>> M putParentsInto(M parentsByNode) {
+        for(int node = 0; node < flattenedNodes.size(); node++) {
+            parentsByNode.put(flattenedNodes.get(node), parents.get(node));
+        }
+        return parentsByNode;
+    }
+
+    /**
+     * The node at the end of a path of names, starting from a top-level node.
+     */
+    Optional<T> findByPath(List<String> names) {
+        Map<String, PathNode<T>> candidates = paths;
+        PathNode<T> node = null;
+        for(String name : names) {
+            node = candidates.get(name);
+            if (node == null) {
+                return Optional.absent();
+            }
+            candidates = node.children;
+        }
+        return (node == null) ? Optional.<T>absent() : Optional.of(node.node);
+    }
+
+    /**
+     * The children of a node that remain to be indexed, with their parents, and the paths to add them to
+     * (none if their parent is not part of the paths).
+     */
+    private static class PendingChildren<T> {
+        private final Iterator<T> remainingChildren;
+        private final PathList<T> parents;
+        private final Map<String, PathNode<T>> paths;
+
+        private PendingChildren(List<T> children, PathList<T> parents, Map<String, PathNode<T>> paths) {
+            this.remainingChildren = children.iterator();
+            this.parents = parents;
+            this.paths = paths;
+        }
+    }
+
+    private static class PathNode<T> {
+        private final T node;
+        private final Map<String, PathNode<T>> children;
+
+        private PathNode(T node, Map<String, PathNode<T>> children) {
+            this.node = node;
+            this.children = children;
+        }
+    }
+}
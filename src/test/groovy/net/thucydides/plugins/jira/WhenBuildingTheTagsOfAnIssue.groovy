@@ -0,0 +1,161 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.model.TestOutcome
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class WhenBuildingTheTagsOfAnIssue extends Specification {
+
+    def environmentVariables = new MockEnvironmentVariables()
+
+    def issueSource = Mock(IssueSource)
+
+    def setup() {
+        environmentVariables.setProperty("jira.url", "http://my.jira")
+        environmentVariables.setProperty("jira.project", "DEMO")
+        def capability = new CascadingSelectOption("Grow apples", null)
+        capability.addChildren([new CascadingSelectOption("Pick apples", capability, [])])
+        issueSource.findOptionsForCascadingSelect("Requirements") >> [capability]
+    }
+
+    def provider() {
+        new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                 environmentVariables, issueSource)
+    }
+
+    def issue(String key) {
+        new IssueSummary(new URI("http://my.jira/" + key), 1L, key, "Summary of " + key, "", [:], "Story",
+                         [], ["1.0"], ["Requirements": ["Grow apples", "Pick apples"], "Release": ["Release 1", "Sprint 1"]])
+    }
+
+    def outcomeFor(List<String> issueKeys) {
+        Mock(TestOutcome) {
+            getIssueKeys() >> issueKeys
+        }
+    }
+
+    /**
+     * Wait until all of the threads have started and each of them is parked,
+     * e.g. waiting for a response or for another thread's result.
+     */
+    def waitUntilWaiting(Collection<Thread> threads, int threadCount) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (System.currentTimeMillis() < deadline
+               && !(threads.size() == threadCount && threads.every { it.state == Thread.State.WAITING })) {
+            Thread.yield()
+        }
+    }
+
+    def "should tag custom field releases only once when they are used"() {
+        given:
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.USE_CUSTOMFIELD_RELEASES, "true")
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+        when:
+            def tags = provider().getTagsFor(outcomeFor(["DEMO-1"]))
+        then:
+            tags == [TestTag.withName("Grow apples/Pick apples").andType("feature"),
+                     TestTag.withName("Grow apples").andType("capability"),
+                     TestTag.withName("Release 1").andType("version"),
+                     TestTag.withName("Sprint 1").andType("version"),
+                     TestTag.withName("Summary of DEMO-1").andType("Story")] as Set
+    }
+
+    def "should tag fix versions and ignore the release field when custom field releases are not used"() {
+        given:
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+        when:
+            def tags = provider().getTagsFor(outcomeFor(["DEMO-1"]))
+        then:
+            tags.contains(TestTag.withName("1.0").andType("Version"))
+            !tags.any { it.type == "version" }
+    }
+
+    def "should build the tags of an issue once for all of the outcomes that reference it"() {
+        given:
+            def provider = provider()
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+        when:
+            def firstTags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+            def secondTags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+        then:
+            secondTags.is(firstTags)
+    }
+
+    def "should build the tags again after the requirements are refreshed"() {
+        given:
+            def provider = provider()
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+            def firstTags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+        when:
+            provider.refreshRequirements()
+        then:
+            !provider.getTagsFor(outcomeFor(["DEMO-1"])).is(firstTags)
+    }
+
+    def "should reuse the tags of known issues without looking the issues up again"() {
+        given:
+            def provider = provider()
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+            issueSource.findByKey("DEMO-2") >> Optional.of(issue("DEMO-2"))
+            def firstTags = provider.getTagsFor(outcomeFor(["DEMO-1"]))
+            def secondTags = provider.getTagsFor(outcomeFor(["DEMO-2"]))
+            def issueLookups = provider.getIssueCacheStats().requestCount()
+        when:
+            def tags = provider.getTagsFor(outcomeFor(["DEMO-1", "DEMO-2"]))
+        then:
+            tags == firstTags + secondTags
+            provider.getIssueCacheStats().requestCount() == issueLookups
+    }
+
+    def "should build the tags of an issue once for outcomes tagged at the same time"() {
+        given:
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.ISSUE_CACHE_SIZE_PROPERTY, "0")
+            def requests = new AtomicInteger()
+            def response = new CountDownLatch(1)
+            // Calls to Spock mocks are serialized, so the slow issue lookup is made by a plain issue source
+            def slowIssueSource = [findByKey                    : { String key ->
+                                       requests.incrementAndGet()
+                                       response.await()
+                                       Optional.of(issue(key))
+                                   },
+                                   findOptionsForCascadingSelect: { String field ->
+                                       issueSource.findOptionsForCascadingSelect(field)
+                                   }] as IssueSource
+            def provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                                    environmentVariables, slowIssueSource)
+            def outcomes = (1..8).collect { outcomeFor(["DEMO-1"]) }
+            def taggers = Executors.newFixedThreadPool(8)
+            def start = new CyclicBarrier(8)
+            def taggerThreads = new ConcurrentLinkedQueue<Thread>()
+        when:
+            def tags = outcomes.collect { outcome ->
+                taggers.submit({
+                    start.await()
+                    taggerThreads << Thread.currentThread()
+                    provider.getTagsFor(outcome)
+                } as Callable)
+            }
+            waitUntilWaiting(taggerThreads, 8)
+            response.countDown()
+        then:
+            tags.collect { it.get(5, TimeUnit.SECONDS) }.every { it.is(tags[0].get()) }
+            requests.get() == 1
+        cleanup:
+            taggers.shutdownNow()
+    }
+}
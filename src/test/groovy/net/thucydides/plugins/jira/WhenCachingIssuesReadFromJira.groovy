@@ -0,0 +1,205 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.requirements.IssueCache
+import net.thucydides.plugins.jira.requirements.IssueSource
+import org.json.JSONException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class WhenCachingIssuesReadFromJira extends Specification {
+
+    def issueSource = Mock(IssueSource)
+
+    def ONE_HOUR = 60 * 60 * 1000L
+
+    def issue(String key) {
+        new IssueSummary(new URI("http://my.jira/" + key), 1L, key, "Summary of " + key, "", [:], "Story")
+    }
+
+    /**
+     * Wait until all of the threads have started and each of them is parked,
+     * e.g. waiting for a response or for another thread's result.
+     */
+    def waitUntilWaiting(Collection<Thread> threads, int threadCount) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (System.currentTimeMillis() < deadline
+               && !(threads.size() == threadCount && threads.every { it.state == Thread.State.WAITING })) {
+            Thread.yield()
+        }
+    }
+
+    def "should only fetch each issue once"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+        when:
+            def first = issueCache.findByKey("DEMO-1")
+            def second = issueCache.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+        and:
+            first.get().key == "DEMO-1"
+            second.is(first)
+        and:
+            issueCache.stats().hitCount() == 1
+            issueCache.stats().missCount() == 1
+    }
+
+    def "should evict issues beyond the maximum size"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 1, ONE_HOUR)
+            issueSource.findByKey(_) >> { String key -> Optional.of(issue(key)) }
+        when:
+            issueCache.findByKey("DEMO-1")
+            issueCache.findByKey("DEMO-2")
+        then:
+            issueCache.stats().evictionCount() == 1
+    }
+
+    def "should not cache failed lookups"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+        when:
+            issueCache.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findByKey("DEMO-1") >> { throw new JSONException("JIRA query failed: error 500") }
+            thrown(JSONException)
+        when:
+            def loadedIssue = issueCache.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+            loadedIssue.isPresent()
+    }
+
+    def "should prefetch issues in batches using JQL"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+        when:
+            issueCache.prefetch(["DEMO-1", "DEMO-2", "DEMO-3"], 2)
+            def prefetched = issueCache.findByKey("DEMO-3")
+        then:
+            1 * issueSource.findByJQL('key in ("DEMO-1","DEMO-2")') >> [issue("DEMO-1"), issue("DEMO-2")]
+            1 * issueSource.findByJQL('key in ("DEMO-3")') >> [issue("DEMO-3")]
+            0 * issueSource.findByKey(_)
+        and:
+            prefetched.get().key == "DEMO-3"
+    }
+
+    def "should load issues one by one if a batch cannot be prefetched"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+            issueSource.findByJQL(_) >> { throw new JSONException("JIRA query failed: error 500") }
+        when:
+            issueCache.prefetch(["DEMO-1", "DEMO-2"], 10)
+            def loadedIssue = issueCache.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1"))
+            loadedIssue.isPresent()
+    }
+
+    def "should prefetch the other issues of a batch with an unknown key"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+            def queries = []
+            issueSource.findByJQL(_) >> { String query ->
+                queries << query
+                if (query.contains("UNKNOWN-1")) {
+                    throw new JSONException("JIRA query failed: error 400")
+                }
+                (query =~ /DEMO-\d+/).collect { issue(it) }
+            }
+        when:
+            issueCache.prefetch(["DEMO-1", "DEMO-2", "UNKNOWN-1", "DEMO-3"], 10)
+            def prefetched = ["DEMO-1", "DEMO-2", "DEMO-3"].collect { issueCache.findByKey(it) }
+            def unknownIssue = issueCache.findByKey("UNKNOWN-1")
+        then:
+            0 * issueSource.findByKey(_)
+            prefetched.every { it.isPresent() }
+            !unknownIssue.isPresent()
+        and:
+            queries == ['key in ("DEMO-1","DEMO-2","UNKNOWN-1","DEMO-3")',
+                        'key in ("DEMO-1","DEMO-2")',
+                        'key in ("UNKNOWN-1","DEMO-3")',
+                        'key in ("UNKNOWN-1")',
+                        'key in ("DEMO-3")']
+    }
+
+    def "should look up the prefetched issues that JIRA did not return one by one"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+            def movedIssue = issue("OTHER-7")
+        when:
+            issueCache.prefetch(["DEMO-1", "DEMO-2"], 10)
+            def lookedUpIssue = issueCache.findByKey("DEMO-2")
+        then:
+            1 * issueSource.findByJQL('key in ("DEMO-1","DEMO-2")') >> [issue("DEMO-1"), movedIssue]
+            1 * issueSource.findByKey("DEMO-2") >> Optional.of(movedIssue)
+            lookedUpIssue.get().is(movedIssue)
+    }
+
+    def "should remember issues that do not exist"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, ONE_HOUR)
+        when:
+            def first = issueCache.findByKey("UNKNOWN-1")
+            def second = issueCache.findByKey("UNKNOWN-1")
+        then:
+            1 * issueSource.findByKey("UNKNOWN-1") >> { throw new JSONException("JIRA query failed: error 400") }
+        and:
+            !first.isPresent()
+            !second.isPresent()
+        and:
+            issueCache.missingIssueStats().hitCount() == 1
+    }
+
+    def "should look up missing issues again once their time to live has passed"() {
+        given:
+            def issueCache = new IssueCache(issueSource, 100, 0)
+        when:
+            issueCache.findByKey("UNKNOWN-1")
+            issueCache.findByKey("UNKNOWN-1")
+        then:
+            2 * issueSource.findByKey("UNKNOWN-1") >> { throw new JSONException("JIRA query failed: error 400") }
+    }
+
+    @Unroll
+    def "should send one request for concurrent lookups of the same issue with a cache size of #cacheSize"() {
+        given:
+            def issueCache = new IssueCache(issueSource, cacheSize, ONE_HOUR)
+            def requests = new AtomicInteger()
+            def response = new CountDownLatch(1)
+            issueSource.findByKey("DEMO-1") >> {
+                requests.incrementAndGet()
+                response.await()
+                Optional.of(issue("DEMO-1"))
+            }
+            def lookups = Executors.newFixedThreadPool(8)
+            def start = new CyclicBarrier(8)
+            def lookupThreads = new ConcurrentLinkedQueue<Thread>()
+        when:
+            def issues = (1..8).collect {
+                lookups.submit({
+                    start.await()
+                    lookupThreads << Thread.currentThread()
+                    issueCache.findByKey("DEMO-1")
+                } as java.util.concurrent.Callable)
+            }
+            waitUntilWaiting(lookupThreads, 8)
+            response.countDown()
+        then:
+            issues.every { it.get(5, TimeUnit.SECONDS).get().key == "DEMO-1" }
+            requests.get() == 1
+        cleanup:
+            lookups.shutdownNow()
+        where:
+            cacheSize << [100, 0]
+    }
+}
@@ -0,0 +1,29 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.plugins.jira.requirements.PooledJerseyJiraClient
+import org.glassfish.jersey.client.filter.EncodingFilter
+import org.glassfish.jersey.message.GZipEncoder
+import spock.lang.Specification
+
+class WhenConnectingToJira extends Specification {
+
+    def "should send every request through the same REST client"() {
+        given:
+            def client = new PooledJerseyJiraClient("http://my.jira", "user", "password", "DEMO", "Bug", ["Requirements"], false)
+        when:
+            def restClient = client.restClient()
+        then:
+            client.restClient().is(restClient)
+            !restClient.configuration.isRegistered(EncodingFilter)
+    }
+
+    def "should ask for compressed responses when configured to"() {
+        given:
+            def client = new PooledJerseyJiraClient("http://my.jira", "user", "password", "DEMO", "Bug", ["Requirements"], true)
+        when:
+            def restClient = client.restClient()
+        then:
+            restClient.configuration.isRegistered(EncodingFilter)
+            restClient.configuration.isRegistered(GZipEncoder)
+    }
+}
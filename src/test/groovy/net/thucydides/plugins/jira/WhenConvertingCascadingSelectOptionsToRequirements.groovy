@@ -0,0 +1,68 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.RequirementConverter
+import net.thucydides.plugins.jira.requirements.RequirementIndex
+import spock.lang.Specification
+
+class WhenConvertingCascadingSelectOptionsToRequirements extends Specification {
+
+    def converter = new RequirementConverter(["capability", "feature"])
+
+    def option(String name, List<CascadingSelectOption> children = []) {
+        def option = new CascadingSelectOption(name, null)
+        option.addChildren(children)
+        option
+    }
+
+    def "should give each level of options the next requirement type"() {
+        when:
+            def requirements = converter.convertToRequirements([option("Grow apples", [option("Pick apples"),
+                                                                                       option("Sell apples")]),
+                                                                option("Grow potatoes")])
+        then:
+            requirements.collect { it.name } == ["Grow apples", "Grow potatoes"]
+            requirements.collect { it.type } == ["capability", "capability"]
+            requirements[0].children.collect { it.name } == ["Pick apples", "Sell apples"]
+            requirements[0].children.collect { it.type } == ["feature", "feature"]
+            requirements[1].children.isEmpty()
+    }
+
+    def "should name the parent of each nested requirement and use the option as the narrative"() {
+        when:
+            def requirements = converter.convertToRequirements([option("Grow apples", [option("Pick apples")])])
+        then:
+            requirements[0].parent == null
+            requirements[0].children[0].parent == "Grow apples"
+            requirements[0].children[0].narrative.text == "Pick apples"
+    }
+
+    def "should use the last requirement type for deeper levels"() {
+        when:
+            def requirements = converter.convertToRequirements([option("Grow apples", [option("Pick apples",
+                                                                                              [option("Pick red apples")])])])
+        then:
+            requirements[0].children[0].children[0].type == "feature"
+            requirements[0].children[0].children[0].parent == "Pick apples"
+    }
+
+    def "should convert and index deeply nested options"() {
+        given:
+            def topOption = option("Level 0")
+            def deepestOption = topOption
+            (1..5000).each { level ->
+                def child = new CascadingSelectOption("Level " + level, deepestOption)
+                deepestOption.addChildren([child])
+                deepestOption = child
+            }
+        when:
+            def requirements = converter.convertToRequirements([topOption])
+            def index = RequirementIndex.of(requirements)
+        then:
+            def deepest = index.findByPath((0..5000).collect { "Level " + it }).get()
+            deepest.name == "Level 5000"
+            deepest.parent == "Level 4999"
+            index.flattenedRequirements.size() == 5001
+            index.requirementAncestors[deepest].size() == 5000
+    }
+}
@@ -62,4 +62,34 @@ class WhenExtractingReleasesFromCascadingSelects extends Specification {
             releases[0].children[0].parents.collect { it.name } == ["Release 1"]
 
     }
-}
\ No newline at end of file
+
+    def "should record the full parent path in nested releases"() {
+        given:
+            def release1 = new CascadingSelectOption("Release 1", null)
+            def sprint1 = new CascadingSelectOption("Sprint 1", release1)
+            sprint1.addChildren([new CascadingSelectOption("Week 1", sprint1, [])])
+            release1.addChildren([sprint1])
+        when:
+            def releases = releaseConverter.convertToReleases([release1])
+        then:
+            releases[0].children[0].children[0].parents.collect { it.name } == ["Release 1", "Sprint 1"]
+    }
+
+    def "should convert deeply nested options"() {
+        given:
+            def topOption = new CascadingSelectOption("Level 0", null)
+            def option = topOption
+            (1..2000).each { level ->
+                def child = new CascadingSelectOption("Level " + level, option)
+                option.addChildren([child])
+                option = child
+            }
+        when:
+            def releases = releaseConverter.convertToReleases([topOption])
+        then:
+            def release = releases[0]
+            2000.times { release = release.children[0] }
+            release.name == "Level 2000"
+            release.parents.size() == 2000
+    }
+}
@@ -0,0 +1,103 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.requirements.ReleaseConverter
+import net.thucydides.plugins.jira.requirements.ReleaseIndex
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import spock.lang.Specification
+
+class WhenIndexingReleases extends Specification {
+
+    def option(String name, List<CascadingSelectOption> children = []) {
+        def option = new CascadingSelectOption(name, null)
+        option.addChildren(children)
+        option
+    }
+
+    def releaseOptions = [option("Release 1", [option("Sprint 1"), option("Sprint 2")]),
+                          option("Release 2", [option("Sprint 1", [option("Week 1")])])]
+
+    def releases = new ReleaseConverter().convertToReleases(releaseOptions)
+
+    def "should list the flattened releases with each parent before its children"() {
+        when:
+            def index = ReleaseIndex.of(releases)
+        then:
+            index.flattenedReleases.collect { it.name } == ["Release 1", "Sprint 1", "Sprint 2",
+                                                            "Release 2", "Sprint 1", "Week 1"]
+    }
+
+    def "should find the first release with a given name"() {
+        when:
+            def index = ReleaseIndex.of(releases)
+        then:
+            index.findByName("Sprint 1").get().is(releases[0].children[0])
+            index.findByName("Week 1").get().is(releases[1].children[0].children[0])
+            !index.findByName("Sprint 9").isPresent()
+    }
+
+    def "should find releases by path"() {
+        when:
+            def index = ReleaseIndex.of(releases)
+        then:
+            index.findByPath(["Release 2", "Sprint 1"]).get().is(releases[1].children[0])
+            index.findByPath(["Release 2", "Sprint 1", "Week 1"]).get().is(releases[1].children[0].children[0])
+        and:
+            !index.findByPath(["Release 1", "Week 1"]).isPresent()
+            !index.findByPath([]).isPresent()
+    }
+
+    def "should list the parents of a release as releases of the tree"() {
+        given:
+            def index = ReleaseIndex.of(releases)
+            def week = releases[1].children[0].children[0]
+        when:
+            def parents = index.getParentsOf(week)
+        then:
+            parents.collect { it.name } == ["Release 2", "Sprint 1"]
+            parents[0].is(releases[1])
+            parents[1].children == [week]
+        and:
+            index.getParentsOf(releases[0]).isEmpty()
+    }
+
+    def "should index deeply nested releases"() {
+        given:
+            def topOption = option("Level 0")
+            def deepestOption = topOption
+            (1..2000).each { level ->
+                def child = new CascadingSelectOption("Level " + level, deepestOption)
+                deepestOption.addChildren([child])
+                deepestOption = child
+            }
+            def deepReleases = new ReleaseConverter().convertToReleases([topOption])
+        when:
+            def index = ReleaseIndex.of(deepReleases)
+        then:
+            def deepest = index.findByPath((0..2000).collect { "Level " + it }).get()
+            deepest.name == "Level 2000"
+            index.findByName("Level 2000").get().is(deepest)
+            index.flattenedReleases.size() == 2001
+            index.getParentsOf(deepest).size() == 2000
+            index.getParentsOf(deepest)[1999].children == [deepest]
+    }
+
+    def "should find the release of a version tag through the provider"() {
+        given:
+            def environmentVariables = new MockEnvironmentVariables()
+            environmentVariables.setProperty("jira.url", "http://my.jira")
+            environmentVariables.setProperty("jira.project", "DEMO")
+            def issueSource = Mock(IssueSource)
+            issueSource.findOptionsForCascadingSelect("Release") >> releaseOptions
+            def provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                                    environmentVariables, issueSource)
+        when:
+            def release = provider.getReleaseFor(TestTag.withName("Sprint 2").andType("version"))
+        then:
+            release.get().is(provider.getReleases()[0].children[1])
+    }
+}
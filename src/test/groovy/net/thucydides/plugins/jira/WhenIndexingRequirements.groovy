@@ -0,0 +1,77 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.core.requirements.model.Requirement
+import net.thucydides.plugins.jira.requirements.RequirementIndex
+import spock.lang.Specification
+
+class WhenIndexingRequirements extends Specification {
+
+    def requirement(String name, String type, List<Requirement> children = []) {
+        Requirement.named(name).withType(type).withNarrative(name).withChildren(children)
+    }
+
+    def requirements = [requirement("Grow Apples", "capability", [requirement("Grow red apples", "feature"),
+                                                                 requirement("Grow green apples", "feature")]),
+                        requirement("Grow Potatoes", "capability", [requirement("Grow normal potatoes", "feature")])]
+
+    def "should list the flattened requirements with each parent before its children"() {
+        when:
+            def index = RequirementIndex.of(requirements)
+        then:
+            index.flattenedRequirements.collect { it.name } == ["Grow Apples", "Grow red apples", "Grow green apples",
+                                                                "Grow Potatoes", "Grow normal potatoes"]
+    }
+
+    def "should find requirements by type and name"() {
+        when:
+            def index = RequirementIndex.of(requirements)
+        then:
+            index.findByTypeAndName("feature", "Grow normal potatoes").get().is(requirements[1].children[0])
+        and:
+            !index.findByTypeAndName("capability", "Grow normal potatoes").isPresent()
+            !index.findByTypeAndName("feature", "Grow blue apples").isPresent()
+    }
+
+    def "should find the first of several requirements with the same type and name"() {
+        given:
+            def first = requirement("Harvest", "feature")
+            def second = requirement("Harvest", "feature")
+        when:
+            def index = RequirementIndex.of([requirement("Grow Apples", "capability", [first]),
+                                             requirement("Grow Potatoes", "capability", [second])])
+        then:
+            index.findByTypeAndName("feature", "Harvest").get().is(first)
+    }
+
+    def "should index the ancestors of each requirement"() {
+        given:
+            def tree = [requirement("Grow Apples", "capability",
+                                    [requirement("Grow red apples", "feature", [requirement("Plant trees", "story")])])]
+        when:
+            def ancestors = RequirementIndex.of(tree).requirementAncestors
+        then:
+            ancestors[tree[0]].isEmpty()
+            ancestors[tree[0].children[0]].collect { it.name } == ["Grow Apples"]
+            ancestors[tree[0].children[0].children[0]].collect { it.name } == ["Grow Apples", "Grow red apples"]
+    }
+
+    def "should share the ancestor lists of sibling requirements"() {
+        when:
+            def ancestors = RequirementIndex.of(requirements).requirementAncestors
+        then:
+            ancestors[requirements[0].children[0]].is(ancestors[requirements[0].children[1]])
+        and:
+            ancestors[requirements[0].children[0]] == [requirements[0]]
+    }
+
+    def "should find the requirement at the end of a path of requirement names"() {
+        when:
+            def index = RequirementIndex.of(requirements)
+        then:
+            index.findByPath(["Grow Apples", "Grow green apples"]).get().is(requirements[0].children[1])
+            index.findByPath(["Grow Potatoes"]).get().is(requirements[1])
+        and:
+            !index.findByPath(["Grow Potatoes", "Grow green apples"]).isPresent()
+            !index.findByPath([]).isPresent()
+    }
+}
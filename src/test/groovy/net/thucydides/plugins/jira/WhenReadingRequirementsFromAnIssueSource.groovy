@@ -0,0 +1,99 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.ForwardingIssueSource
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class WhenReadingRequirementsFromAnIssueSource extends Specification {
+
+    def environmentVariables = new MockEnvironmentVariables()
+
+    def issueSource = Mock(IssueSource)
+
+    def setup() {
+        environmentVariables.setProperty("jira.url", "http://my.jira")
+        environmentVariables.setProperty("jira.project", "DEMO")
+    }
+
+    def providerReadingFrom(IssueSource source) {
+        new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                 environmentVariables,
+                                                 source)
+    }
+
+    def requirementOptions() {
+        def capability = new CascadingSelectOption("Grow apples", null)
+        capability.addChildren([new CascadingSelectOption("Pick apples", capability, [])])
+        [capability]
+    }
+
+    def "should read the requirements from the issue source given to the provider"() {
+        given:
+            def provider = providerReadingFrom(issueSource)
+        when:
+            def requirements = provider.getRequirements()
+        then:
+            1 * issueSource.findOptionsForCascadingSelect("Requirements") >> requirementOptions()
+        and:
+            requirements.collect { it.name } == ["Grow apples"]
+            provider.getRequirementFor(TestTag.withName("Pick apples").andType("feature")).isPresent()
+    }
+
+    def "should start loading the requirements in the background when eager loading is on"() {
+        given:
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.EAGER_LOAD_PROPERTY, "true")
+            def loaded = new CountDownLatch(1)
+            def loadingThread = null
+        when:
+            def provider = providerReadingFrom(issueSource)
+            loaded.await(10, TimeUnit.SECONDS)
+            def requirements = provider.getRequirements()
+        then:
+            1 * issueSource.findOptionsForCascadingSelect("Requirements") >> {
+                loadingThread = Thread.currentThread().name
+                loaded.countDown()
+                requirementOptions()
+            }
+        and:
+            loadingThread.startsWith("jira-warm-up")
+            requirements.collect { it.name } == ["Grow apples"]
+    }
+
+    def "should let a decorator change only the calls it overrides"() {
+        given:
+            def recordedKeys = []
+            def recordingSource = new ForwardingIssueSource() {
+                @Override
+                protected IssueSource delegate() {
+                    issueSource
+                }
+
+                @Override
+                Optional<IssueSummary> findByKey(String key) throws JSONException {
+                    recordedKeys << key
+                    super.findByKey(key)
+                }
+            }
+        when:
+            def options = recordingSource.findOptionsForCascadingSelect("Requirements")
+            def issue = recordingSource.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findOptionsForCascadingSelect("Requirements") >> requirementOptions()
+            1 * issueSource.findByKey("DEMO-1") >> Optional.absent()
+        and:
+            options.size() == 1
+            !issue.isPresent()
+            recordedKeys == ["DEMO-1"]
+    }
+}
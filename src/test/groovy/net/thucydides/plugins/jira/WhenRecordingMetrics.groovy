@@ -0,0 +1,69 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.InMemoryMetricsRecorder
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.requirements.MeteredIssueSource
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class WhenRecordingMetrics extends Specification {
+
+    def metrics = new InMemoryMetricsRecorder()
+
+    def issueSource = Mock(IssueSource)
+
+    def "should report percentiles to within an eighth of their value"() {
+        when:
+            (1..100).each { metrics.recordTime("lookup", it, TimeUnit.MILLISECONDS) }
+        then:
+            def timer = metrics.getTimer("lookup")
+            timer.count == 100
+            timer.getMean(TimeUnit.MILLISECONDS) == 50.5d
+            timer.getMax(TimeUnit.MILLISECONDS) == 100d
+            timer.getPercentile(50, TimeUnit.MILLISECONDS) >= 50d
+            timer.getPercentile(50, TimeUnit.MILLISECONDS) <= 50d * 9 / 8
+            timer.getPercentile(100, TimeUnit.MILLISECONDS) == 100d
+    }
+
+    def "should time and count the calls made to an issue source"() {
+        given:
+            def meteredSource = new MeteredIssueSource(issueSource, metrics)
+            issueSource.findByKey("DEMO-1") >> Optional.absent()
+            issueSource.findByKey("DEMO-2") >> { throw new JSONException("JIRA query failed: error 500") }
+        when:
+            meteredSource.findByKey("DEMO-1")
+            meteredSource.findByKey("DEMO-2")
+        then:
+            thrown(JSONException)
+        and:
+            metrics.getTimer("jira.findByKey").count == 2
+            metrics.getCount("jira.findByKey.errors") == 1
+    }
+
+    def "should record the size of the requirements tree loaded by the provider"() {
+        given:
+            def environmentVariables = new MockEnvironmentVariables()
+            environmentVariables.setProperty("jira.url", "http://my.jira")
+            environmentVariables.setProperty("jira.project", "DEMO")
+            def provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                                    environmentVariables, issueSource, metrics)
+            def capability = new CascadingSelectOption("Grow apples", null)
+            capability.addChildren([new CascadingSelectOption("Pick apples", capability, []),
+                                    new CascadingSelectOption("Sell apples", capability, [])])
+            issueSource.findOptionsForCascadingSelect("Requirements") >> [capability]
+        when:
+            provider.getRequirements()
+        then:
+            metrics.getGauge("requirements.nodes") == 3d
+            metrics.getGauge("requirements.depth") == 2d
+            metrics.getTimer("jira.findOptionsForCascadingSelect").count == 1
+            metrics.getTimer("requirements.load").count == 1
+    }
+}
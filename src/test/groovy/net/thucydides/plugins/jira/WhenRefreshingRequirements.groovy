@@ -0,0 +1,168 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.model.TestOutcome
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.CascadingSelectSnapshot
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.requirements.RequirementConverter
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class WhenRefreshingRequirements extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def environmentVariables = new MockEnvironmentVariables()
+
+    def issueSource = Mock(IssueSource)
+
+    JIRACustomFieldsRequirementsProvider provider
+
+    def setup() {
+        environmentVariables.setProperty("jira.url", "http://my.jira")
+        environmentVariables.setProperty("jira.project", "DEMO")
+        provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                            environmentVariables, issueSource)
+    }
+
+    def option(String name, List<CascadingSelectOption> children = []) {
+        def option = new CascadingSelectOption(name, null)
+        option.addChildren(children)
+        option
+    }
+
+    def issue(String key, String summary) {
+        new IssueSummary(new URI("http://my.jira/" + key), 1L, key, summary, "", [:], "Story")
+    }
+
+    def applesAndPears(List<String> pearFeatures) {
+        [option("Grow apples", [option("Pick apples"), option("Sell apples")]),
+         option("Grow pears", pearFeatures.collect { option(it) })]
+    }
+
+    def "should keep the requirements that have not changed"() {
+        given:
+            issueSource.findOptionsForCascadingSelect("Requirements") >>> [applesAndPears(["Pick pears"]),
+                                                                           applesAndPears(["Pick pears", "Sell pears"])]
+            def apples = provider.getRequirements()[0]
+            def pears = provider.getRequirements()[1]
+            def pickApplesAncestors = provider.getRequirementAncestors()[apples.children[0]]
+        when:
+            provider.refreshRequirements()
+        then:
+            provider.getRequirements()[0].is(apples)
+            provider.getRequirementAncestors()[apples.children[0]].is(pickApplesAncestors)
+        and:
+            !provider.getRequirements()[1].is(pears)
+            provider.getRequirements()[1].children[0].is(pears.children[0])
+            provider.getRequirements()[1].children.collect { it.name } == ["Pick pears", "Sell pears"]
+    }
+
+    def "should find the new requirements after a refresh"() {
+        given:
+            issueSource.findOptionsForCascadingSelect("Requirements") >>> [applesAndPears(["Pick pears"]),
+                                                                           applesAndPears(["Sell pears"])]
+            def sellPears = TestTag.withName("Sell pears").andType("feature")
+        expect:
+            !provider.getRequirementFor(sellPears).isPresent()
+        when:
+            provider.refresh()
+        then:
+            provider.getRequirementFor(sellPears).isPresent()
+            !provider.getRequirementFor(TestTag.withName("Pick pears").andType("feature")).isPresent()
+    }
+
+    def "should read the options from JIRA rather than from a fresh snapshot during a refresh"() {
+        given:
+            environmentVariables.setProperty("thucydides.jira.snapshot.ttl", "60")
+            environmentVariables.setProperty("thucydides.jira.snapshot.directory", temporaryFolder.root.path)
+            issueSource.findOptionsForCascadingSelect("Requirements") >>> [applesAndPears(["Pick pears"]),
+                                                                           applesAndPears(["Sell pears"])]
+            def snapshottingProvider = new JIRACustomFieldsRequirementsProvider(
+                    new SystemPropertiesJIRAConfiguration(environmentVariables), environmentVariables, issueSource)
+            snapshottingProvider.getRequirements()
+        when:
+            snapshottingProvider.refreshRequirements()
+        then:
+            snapshottingProvider.getRequirements()[1].children.collect { it.name } == ["Sell pears"]
+        and:
+            new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Requirements", 60000L)
+                    .load().get()[1].nestedOptions.collect { it.option } == ["Sell pears"]
+    }
+
+    def "should read the issues again after a refresh"() {
+        given:
+            issueSource.findOptionsForCascadingSelect("Requirements") >> applesAndPears(["Pick pears"])
+            def outcome = Mock(TestOutcome) {
+                getIssueKeys() >> ["DEMO-1"]
+            }
+        when:
+            provider.getTagsFor(outcome)
+            provider.getTagsFor(outcome)
+            provider.refresh()
+            def tags = provider.getTagsFor(outcome)
+        then:
+            2 * issueSource.findByKey("DEMO-1") >>> [Optional.of(issue("DEMO-1", "Old summary")),
+                                                     Optional.of(issue("DEMO-1", "New summary"))]
+            tags.contains(TestTag.withName("New summary").andType("Story"))
+    }
+
+    def "should keep the current requirements when no options can be read"() {
+        given:
+            issueSource.findOptionsForCascadingSelect("Requirements") >>> [applesAndPears(["Pick pears"]), []]
+            def requirements = provider.getRequirements()
+        when:
+            provider.refreshRequirements()
+        then:
+            provider.getRequirements().is(requirements)
+    }
+
+    def "should not read empty options again until the retry interval has passed"() {
+        given:
+            def pickPears = TestTag.withName("Pick pears").andType("feature")
+        when:
+            def requirements = (1..10).collect { provider.getRequirements() }
+        then:
+            1 * issueSource.findOptionsForCascadingSelect("Requirements") >> []
+            requirements.every { it.isEmpty() }
+        when:
+            provider.refresh()
+        then:
+            1 * issueSource.findOptionsForCascadingSelect("Requirements") >> applesAndPears(["Pick pears"])
+            provider.getRequirements().collect { it.name } == ["Grow apples", "Grow pears"]
+            provider.getRequirementFor(pickPears).isPresent()
+    }
+
+    def "should read empty options again once the retry interval has passed"() {
+        given:
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.EMPTY_OPTIONS_RETRY_INTERVAL_PROPERTY, "0")
+            def retryingProvider = new JIRACustomFieldsRequirementsProvider(
+                    new SystemPropertiesJIRAConfiguration(environmentVariables), environmentVariables, issueSource)
+        when:
+            def firstRequirements = retryingProvider.getRequirements()
+            def secondRequirements = retryingProvider.getRequirements()
+        then:
+            2 * issueSource.findOptionsForCascadingSelect("Requirements") >>> [[], applesAndPears(["Pick pears"])]
+            firstRequirements.isEmpty()
+            secondRequirements.collect { it.name } == ["Grow apples", "Grow pears"]
+    }
+
+    def "should convert unchanged options to the same requirements as before"() {
+        given:
+            def converter = new RequirementConverter(["capability", "feature"])
+            def previousRequirements = converter.convertToRequirements(applesAndPears(["Pick pears"]))
+        when:
+            def requirements = converter.convertToRequirements(applesAndPears(["Pick pears"]), previousRequirements)
+        then:
+            requirements == previousRequirements
+            [requirements, previousRequirements].transpose().every { it[0].is(it[1]) }
+    }
+}
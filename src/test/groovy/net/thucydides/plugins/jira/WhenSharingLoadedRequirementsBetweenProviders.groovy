@@ -0,0 +1,98 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.CascadingSelectSnapshot
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class WhenSharingLoadedRequirementsBetweenProviders extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def environmentFor(String project) {
+        def environmentVariables = new MockEnvironmentVariables()
+        environmentVariables.setProperty("jira.url", "http://my.jira")
+        environmentVariables.setProperty("jira.project", project)
+        environmentVariables
+    }
+
+    def providerFor(MockEnvironmentVariables environmentVariables) {
+        new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                 environmentVariables)
+    }
+
+    def "should share one state between providers with the same configuration"() {
+        when:
+            def provider = providerFor(environmentFor("SHARED"))
+            def otherProvider = providerFor(environmentFor("SHARED"))
+        then:
+            otherProvider.getMetrics().is(provider.getMetrics())
+            otherProvider.getIssueCacheStats() == provider.getIssueCacheStats()
+    }
+
+    def "should load the requirements only once for providers with the same configuration"() {
+        given:
+            def capability = new CascadingSelectOption("Grow apples", null)
+            capability.addChildren([new CascadingSelectOption("Pick apples", capability, [])])
+            new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/LOADED/Bug", "Requirements", 60000L)
+                    .save([capability])
+            def environmentVariables = environmentFor("LOADED")
+            environmentVariables.setProperty("thucydides.jira.snapshot.ttl", "1")
+            environmentVariables.setProperty("thucydides.jira.snapshot.directory", temporaryFolder.root.path)
+            def provider = providerFor(environmentVariables)
+            def otherProvider = providerFor(environmentVariables)
+        when:
+            def requirements = provider.getRequirements()
+            def otherRequirements = otherProvider.getRequirements()
+        then:
+            requirements.collect { it.name } == ["Grow apples"]
+            otherRequirements.is(requirements)
+            provider.getMetrics().getTimer("requirements.load").count == 1
+    }
+
+    def "should not share state between providers with different passwords"() {
+        given:
+            def environmentVariables = environmentFor("SHARED")
+            environmentVariables.setProperty("jira.password", "other password")
+        when:
+            def provider = providerFor(environmentFor("SHARED"))
+            def otherProvider = providerFor(environmentVariables)
+        then:
+            !otherProvider.getMetrics().is(provider.getMetrics())
+    }
+
+    def "should not share state between providers for different projects"() {
+        when:
+            def provider = providerFor(environmentFor("SHARED"))
+            def otherProvider = providerFor(environmentFor("OTHER"))
+        then:
+            !otherProvider.getMetrics().is(provider.getMetrics())
+    }
+
+    def "should not share state between providers with different requirement types"() {
+        given:
+            def environmentVariables = environmentFor("SHARED")
+            environmentVariables.setProperty("thucydides.requirement.types", "epic, story")
+        when:
+            def provider = providerFor(environmentFor("SHARED"))
+            def otherProvider = providerFor(environmentVariables)
+        then:
+            !otherProvider.getMetrics().is(provider.getMetrics())
+    }
+
+    def "should not share state between providers with different cache settings"() {
+        given:
+            def environmentVariables = environmentFor("SHARED")
+            environmentVariables.setProperty("thucydides.jira.issue.cache.size", "10")
+        when:
+            def provider = providerFor(environmentFor("SHARED"))
+            def otherProvider = providerFor(environmentVariables)
+        then:
+            !otherProvider.getMetrics().is(provider.getMetrics())
+    }
+}
@@ -0,0 +1,90 @@
+package net.thucydides.plugins.jira
+
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.CascadingSelectSnapshot
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class WhenSnapshottingCascadingSelectOptions extends Specification {
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    def ONE_HOUR = 60 * 60 * 1000L
+
+    def releaseOptions() {
+        def release1 = new CascadingSelectOption("Release 1", null)
+        release1.addChildren([new CascadingSelectOption("Sprint 1", release1, []),
+                              new CascadingSelectOption("Sprint\t2", release1, [])])
+        def release2 = new CascadingSelectOption("Release 2", null)
+        [release1, release2]
+    }
+
+    def "should read back the saved options"() {
+        given:
+            def snapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Release", ONE_HOUR)
+        when:
+            snapshot.save(releaseOptions())
+            def options = snapshot.load()
+        then:
+            options.isPresent()
+        and:
+            options.get().collect { it.option } == ["Release 1", "Release 2"]
+            options.get()[0].nestedOptions.collect { it.option } == ["Sprint 1", "Sprint\t2"]
+            options.get()[0].nestedOptions[0].parentOption.get().option == "Release 1"
+            options.get()[1].nestedOptions.isEmpty()
+    }
+
+    def "should read back deeply nested options"() {
+        given:
+            def snapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Release", ONE_HOUR)
+            def topOption = new CascadingSelectOption("Level 0", null)
+            def deepestOption = topOption
+            (1..5000).each { level ->
+                def child = new CascadingSelectOption("Level " + level, deepestOption)
+                deepestOption.addChildren([child])
+                deepestOption = child
+            }
+        when:
+            snapshot.save([topOption])
+            def options = snapshot.load()
+        then:
+            def levels = []
+            def option = options.get()[0]
+            while (option != null) {
+                levels << option.option
+                option = option.nestedOptions ? option.nestedOptions[0] : null
+            }
+            levels == (0..5000).collect { "Level " + it }
+    }
+
+    def "should ignore snapshots older than the time to live"() {
+        given:
+            def snapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Release", ONE_HOUR)
+            snapshot.save(releaseOptions())
+        when:
+            snapshot.snapshotFile.setLastModified(System.currentTimeMillis() - 2 * ONE_HOUR)
+        then:
+            !snapshot.load().isPresent()
+    }
+
+    def "should not share snapshots between JIRA projects"() {
+        given:
+            def demoSnapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Release", ONE_HOUR)
+            def otherSnapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/OTHER/Bug", "Release", ONE_HOUR)
+        when:
+            demoSnapshot.save(releaseOptions())
+        then:
+            !otherSnapshot.load().isPresent()
+    }
+
+    def "should not record empty option lists"() {
+        given:
+            def snapshot = new CascadingSelectSnapshot(temporaryFolder.root, "http://my.jira/DEMO/Bug", "Release", ONE_HOUR)
+        when:
+            snapshot.save([])
+        then:
+            !snapshot.snapshotFile.exists()
+    }
+}
@@ -0,0 +1,113 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.model.TestOutcome
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.json.JSONException
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class WhenTaggingTestOutcomesAsynchronously extends Specification {
+
+    def environmentVariables = new MockEnvironmentVariables()
+
+    def issueSource = Mock(IssueSource)
+
+    JIRACustomFieldsRequirementsProvider provider
+
+    def setup() {
+        environmentVariables.setProperty("jira.url", "http://my.jira")
+        environmentVariables.setProperty("jira.project", "DEMO")
+        provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                            environmentVariables, issueSource)
+        def capability = new CascadingSelectOption("Grow apples", null)
+        capability.addChildren([new CascadingSelectOption("Pick apples", capability, []),
+                                new CascadingSelectOption("Sell apples", capability, [])])
+        issueSource.findOptionsForCascadingSelect("Requirements") >> [capability]
+    }
+
+    def issue(String key, List<String> requirements) {
+        new IssueSummary(new URI("http://my.jira/" + key), 1L, key, "Summary of " + key, "", [:], "Story",
+                         [], [], ["Requirements": requirements])
+    }
+
+    def outcomeFor(List<String> issueKeys) {
+        Mock(TestOutcome) {
+            getIssueKeys() >> issueKeys
+        }
+    }
+
+    def "should tag an outcome with the tags of all of its issues"() {
+        given:
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1", ["Grow apples", "Pick apples"]))
+            issueSource.findByKey("DEMO-2") >> Optional.of(issue("DEMO-2", ["Grow apples", "Sell apples"]))
+        when:
+            def tags = provider.getTagsForAsync(outcomeFor(["DEMO-1", "DEMO-2"])).get(10, TimeUnit.SECONDS)
+        then:
+            tags.containsAll([TestTag.withName("Grow apples/Pick apples").andType("feature"),
+                              TestTag.withName("Grow apples/Sell apples").andType("feature"),
+                              TestTag.withName("Grow apples").andType("capability"),
+                              TestTag.withName("Summary of DEMO-1").andType("Story"),
+                              TestTag.withName("Summary of DEMO-2").andType("Story")])
+        and:
+            tags == provider.getTagsFor(outcomeFor(["DEMO-1", "DEMO-2"]))
+    }
+
+    def "should find the associated requirements of an outcome"() {
+        given:
+            issueSource.findByKey("DEMO-1") >> Optional.of(issue("DEMO-1", ["Grow apples", "Pick apples"]))
+        when:
+            def requirements = provider.getAssociatedRequirementsAsync(outcomeFor(["DEMO-1"])).get(10, TimeUnit.SECONDS)
+        then:
+            requirements.collect { it.name } == ["Pick apples", "Grow apples"]
+    }
+
+    def "should not hold a lookup thread while waiting for an issue that is already being read"() {
+        given:
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.ASYNC_LOOKUPS_PROPERTY, "2")
+            def slowResponse = new CountDownLatch(1)
+            // Calls to Spock mocks are serialized, so the slow issue lookup is made by a plain issue source
+            def slowIssueSource = [findByKey                    : { String key ->
+                                       if (key == "DEMO-1") {
+                                           slowResponse.await()
+                                       }
+                                       Optional.of(issue(key, ["Grow apples", "Pick apples"]))
+                                   },
+                                   findOptionsForCascadingSelect: { String field ->
+                                       issueSource.findOptionsForCascadingSelect(field)
+                                   }] as IssueSource
+            def asyncProvider = new JIRACustomFieldsRequirementsProvider(
+                    new SystemPropertiesJIRAConfiguration(environmentVariables), environmentVariables, slowIssueSource)
+        when:
+            def slowTags = (1..4).collect { asyncProvider.getTagsForAsync(outcomeFor(["DEMO-1"])) }
+            def otherTags = asyncProvider.getTagsForAsync(outcomeFor(["DEMO-2"])).get(10, TimeUnit.SECONDS)
+        then:
+            otherTags.contains(TestTag.withName("Summary of DEMO-2").andType("Story"))
+            slowTags.every { !it.isDone() }
+        when:
+            slowResponse.countDown()
+        then:
+            slowTags.every { it.get(10, TimeUnit.SECONDS).contains(TestTag.withName("Summary of DEMO-1").andType("Story")) }
+        cleanup:
+            slowResponse.countDown()
+    }
+
+    def "should fail the returned future when an issue cannot be read"() {
+        given:
+            issueSource.findByKey("DEMO-1") >> { throw new JSONException("JIRA query failed: error 500") }
+        when:
+            provider.getTagsForAsync(outcomeFor(["DEMO-1"])).get(10, TimeUnit.SECONDS)
+        then:
+            def failure = thrown(ExecutionException)
+            failure.cause instanceof IllegalArgumentException
+    }
+}
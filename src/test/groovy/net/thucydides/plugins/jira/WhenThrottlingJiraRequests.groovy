@@ -0,0 +1,109 @@
+package net.thucydides.plugins.jira
+
+import com.google.common.base.Optional
+import net.thucydides.core.model.TestOutcome
+import net.thucydides.core.model.TestTag
+import net.thucydides.core.util.MockEnvironmentVariables
+import net.thucydides.plugins.jira.domain.IssueSummary
+import net.thucydides.plugins.jira.model.CascadingSelectOption
+import net.thucydides.plugins.jira.requirements.InMemoryMetricsRecorder
+import net.thucydides.plugins.jira.requirements.IssueSource
+import net.thucydides.plugins.jira.requirements.JIRACustomFieldsRequirementsProvider
+import net.thucydides.plugins.jira.requirements.ThrottledIssueSource
+import net.thucydides.plugins.jira.service.SystemPropertiesJIRAConfiguration
+import org.json.JSONException
+import spock.lang.Specification
+
+class WhenThrottlingJiraRequests extends Specification {
+
+    def metrics = new InMemoryMetricsRecorder()
+
+    def issueSource = Mock(IssueSource)
+
+    def issue = new IssueSummary(new URI("http://my.jira/DEMO-1"), 1L, "DEMO-1", "Pick apples", "", [:], "Story",
+                                 [], [], ["Requirements": ["Grow apples", "Pick apples"]])
+
+    def throttled() {
+        new JSONException("JIRA query failed: error 429")
+    }
+
+    def "should retry throttled requests until they succeed"() {
+        given:
+            def throttledSource = new ThrottledIssueSource(issueSource, 0, 3, 1, metrics)
+        when:
+            def result = throttledSource.findByKey("DEMO-1")
+        then:
+            3 * issueSource.findByKey("DEMO-1") >> { throw throttled() } >> { throw throttled() } >> Optional.of(issue)
+            result.get() == issue
+            metrics.getCount("jira.retries") == 2
+    }
+
+    def "should pass the error on once the retries are used up"() {
+        given:
+            def throttledSource = new ThrottledIssueSource(issueSource, 0, 2, 1, metrics)
+        when:
+            throttledSource.findByJQL("key in (\"DEMO-1\")")
+        then:
+            3 * issueSource.findByJQL(_) >> { throw new JSONException("JIRA query failed: error 503") }
+            thrown(JSONException)
+            metrics.getCount("jira.throttled") == 3
+    }
+
+    def "should not retry requests that fail for other reasons"() {
+        given:
+            def throttledSource = new ThrottledIssueSource(issueSource, 0, 3, 1, metrics)
+        when:
+            throttledSource.findByKey("DEMO-1")
+        then:
+            1 * issueSource.findByKey("DEMO-1") >> { throw new JSONException("JIRA query failed: error 500") }
+            thrown(JSONException)
+    }
+
+    def "should halve the request rate when throttled and raise it again after successful requests"() {
+        given:
+            def throttledSource = new ThrottledIssueSource(issueSource, 100, 3, 1, metrics)
+            issueSource.findByKey("DEMO-1") >> { throw throttled() } >> Optional.of(issue)
+        when:
+            throttledSource.findByKey("DEMO-1")
+        then:
+            throttledSource.rate > 50
+            throttledSource.rate < 51
+        when:
+            100.times { throttledSource.findByKey("DEMO-1") }
+        then:
+            throttledSource.rate > 51
+            throttledSource.rate <= 100
+    }
+
+    def "should not limit requests without a maximum rate"() {
+        given:
+            def throttledSource = new ThrottledIssueSource(issueSource, 0, 3, 1, metrics)
+            issueSource.findByKey("DEMO-1") >> { throw throttled() } >> Optional.of(issue)
+        when:
+            throttledSource.findByKey("DEMO-1")
+        then:
+            throttledSource.rate == 0
+    }
+
+    def "should tag outcomes whose issues were throttled by JIRA"() {
+        given:
+            def environmentVariables = new MockEnvironmentVariables()
+            environmentVariables.setProperty("jira.url", "http://my.jira")
+            environmentVariables.setProperty("jira.project", "DEMO")
+            environmentVariables.setProperty(JIRACustomFieldsRequirementsProvider.RETRY_BACKOFF_PROPERTY, "1")
+            def capability = new CascadingSelectOption("Grow apples", null)
+            capability.addChildren([new CascadingSelectOption("Pick apples", capability, [])])
+            issueSource.findOptionsForCascadingSelect("Requirements") >> [capability]
+            issueSource.findByKey("DEMO-1") >> { throw throttled() } >> Optional.of(issue)
+            def provider = new JIRACustomFieldsRequirementsProvider(new SystemPropertiesJIRAConfiguration(environmentVariables),
+                                                                    environmentVariables, issueSource, metrics)
+            def outcome = Mock(TestOutcome) {
+                getIssueKeys() >> ["DEMO-1"]
+            }
+        when:
+            def tags = provider.getTagsFor(outcome)
+        then:
+            tags.contains(TestTag.withName("Grow apples/Pick apples").andType("feature"))
+            metrics.getCount("jira.retries") == 1
+    }
+}